@@ -0,0 +1,104 @@
+package gershwin.bench;
+
+import clojure.lang.RT;
+import clojure.lang.Symbol;
+import clojure.lang.Var;
+import gershwin.lang.Compiler;
+import gershwin.lang.SourceReader;
+import gershwin.lang.Stack;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.StringReader;
+
+/**
+ * Loading Gershwin and defining the words the benchmarks exercise.
+ */
+class BenchmarkSupport {
+    static final String BENCH_NS = "gershwin.bench";
+
+    /**
+     * Gershwin's .gwn sources aren't packaged in its jar, so the benchmarks
+     * that read them find them in the source tree, by default the one
+     * this module sits in.
+     */
+    static final File SOURCE_DIR =
+        new File(System.getProperty("gershwin.bench.sources", "../src/main/gwn"));
+
+    private static boolean booted = false;
+
+    /**
+     * Load gershwin.core and define the words in gershwin/bench/words.gwn
+     * in the gershwin.bench namespace. Safe to call more than once.
+     */
+    static synchronized void boot() throws IOException {
+        if(booted)
+            return;
+        RT.var("clojure.core", "require").invoke(Symbol.intern("gershwin.core"));
+        Var.pushThreadBindings(RT.map(RT.CURRENT_NS, RT.CURRENT_NS.deref()));
+        try {
+            Compiler.load(SourceReader.forStream(resourceStream("gershwin/bench/words.gwn")),
+                          "gershwin/bench/words.gwn", "words.gwn");
+        } finally {
+            Var.popThreadBindings();
+        }
+        Stack.clear();
+        booted = true;
+    }
+
+    /**
+     * The Var holding the Gershwin word with the given name.
+     */
+    static Var word(String ns, String name) {
+        Var var = RT.var(ns, gershwin.lang.RT.formatGershwinName(name));
+        if(!var.isBound())
+            throw new IllegalStateException("No such word: " + ns + "/" + name);
+        return var;
+    }
+
+    static InputStream resourceStream(String name) throws IOException {
+        InputStream in = RT.baseLoader().getResourceAsStream(name);
+        if(in == null)
+            throw new IOException("Resource not found: " + name);
+        return in;
+    }
+
+    static Reader resourceReader(String name) throws IOException {
+        return new InputStreamReader(resourceStream(name), gershwin.lang.RT.UTF8);
+    }
+
+    static String resourceString(String name) throws IOException {
+        return slurp(resourceReader(name));
+    }
+
+    /**
+     * The contents of a file under {@link #SOURCE_DIR}, e.g. gershwin/core.gwn.
+     */
+    static String sourceString(String name) throws IOException {
+        File f = new File(SOURCE_DIR, name);
+        if(!f.isFile())
+            throw new IOException("Source not found: " + f.getAbsolutePath()
+                                  + " (set -Dgershwin.bench.sources to Gershwin's src/main/gwn)");
+        return slurp(new InputStreamReader(new FileInputStream(f), gershwin.lang.RT.UTF8));
+    }
+
+    private static String slurp(Reader r) throws IOException {
+        try {
+            StringBuilder sb = new StringBuilder();
+            char[] buf = new char[8192];
+            for(int n = r.read(buf); n != -1; n = r.read(buf))
+                sb.append(buf, 0, n);
+            return sb.toString();
+        } finally {
+            r.close();
+        }
+    }
+
+    static Reader stringReader(String s) {
+        return new StringReader(s);
+    }
+}
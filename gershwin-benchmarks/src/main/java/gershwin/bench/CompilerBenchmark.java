@@ -0,0 +1,50 @@
+package gershwin.bench;
+
+import clojure.lang.RT;
+import clojure.lang.Var;
+import gershwin.lang.Compiler;
+import gershwin.lang.Stack;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time to {@link Compiler#load} a Gershwin file: reading, analysing,
+ * defining its words and running its top-level forms.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class CompilerBenchmark {
+    @Param({"gershwin/bench/words.gwn", "gershwin/string.gwn"})
+    public String file;
+
+    private String source;
+
+    @Setup
+    public void setup() throws Exception {
+        BenchmarkSupport.boot();
+        source = file.startsWith("gershwin/bench/")
+            ? BenchmarkSupport.resourceString(file)
+            : BenchmarkSupport.sourceString(file);
+    }
+
+    @Benchmark
+    public Object load() {
+        Var.pushThreadBindings(RT.map(RT.CURRENT_NS, RT.CURRENT_NS.deref()));
+        try {
+            return Compiler.load(BenchmarkSupport.stringReader(source), file, file);
+        } finally {
+            Var.popThreadBindings();
+            Stack.clear();
+        }
+    }
+}
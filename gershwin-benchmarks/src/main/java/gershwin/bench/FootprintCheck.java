@@ -0,0 +1,92 @@
+package gershwin.bench;
+
+import clojure.lang.Namespace;
+import clojure.lang.RT;
+import clojure.lang.Symbol;
+import clojure.lang.Var;
+import gershwin.lang.Compiler;
+import gershwin.lang.Stack;
+
+/**
+ * Heap retained by word definitions, with and without
+ * gershwin.rt/*compact-source*: after defining words in a fresh
+ * namespace, and again after removing that namespace. Not a JMH
+ * benchmark, as JMH measures time and allocation rather than what
+ * stays reachable. Run with
+ *
+ *   java -XX:SoftRefLRUPolicyMSPerMB=0 -cp target/benchmarks.jar gershwin.bench.FootprintCheck [words]
+ *
+ * Clojure's class cache holds generated classes softly, so without the
+ * flag a collection may keep removed words around.
+ */
+public class FootprintCheck {
+    static final String FOOTPRINT_NS = "gershwin.bench.footprint";
+
+    public static void main(String[] args) throws Exception {
+        int words = args.length > 0 ? Integer.parseInt(args[0]) : 2000;
+        BenchmarkSupport.boot();
+        String source = source(words);
+        // Once unreported, so classes loaded on first use aren't counted
+        measure(source, words, false);
+        for(boolean compact : new boolean[] {false, true, false, true}) {
+            long[] m = measure(source, words, compact);
+            System.out.println((compact ? "compact: " : "default: ")
+                               + (m[0] / words) + " bytes per word while defined, "
+                               + (m[1] / words) + " after removing the namespace");
+        }
+    }
+
+    /**
+     * Words that each hold some source and a nested quotation.
+     */
+    static String source(int words) {
+        StringBuilder sb = new StringBuilder("(ns " + FOOTPRINT_NS
+                                             + " (:require [gershwin.core :refer :all]))\n");
+        for(int i = 0; i < words; i++)
+            sb.append(": fp").append(i).append(" [n -- n] ").append(i)
+              .append(" + < ").append(i).append(" * > drop 1 drop 2 drop ;\n");
+        return sb.toString();
+    }
+
+    /**
+     * Heap growth after defining the words in source, and what's left of
+     * it once their namespace is removed.
+     */
+    static long[] measure(String source, int words, boolean compact) {
+        Symbol nsName = Symbol.intern(FOOTPRINT_NS);
+        long before = usedHeap();
+        load(source, compact);
+        long defined = usedHeap();
+        Namespace.remove(nsName);
+        long removed = usedHeap();
+        return new long[] {defined - before, removed - before};
+    }
+
+    static void load(String source, boolean compact) {
+        Var.pushThreadBindings(RT.map(RT.CURRENT_NS, RT.CURRENT_NS.deref(),
+                                      RT.var("gershwin.rt", "*compact-source*"), compact));
+        try {
+            Compiler.load(BenchmarkSupport.stringReader(source), "footprint.gwn", "footprint.gwn");
+        } finally {
+            Var.popThreadBindings();
+            Stack.clear();
+        }
+    }
+
+    static long usedHeap() {
+        Runtime rt = Runtime.getRuntime();
+        long used = Long.MAX_VALUE;
+        // Collections can free more once finalizers and reference handlers have run
+        for(int i = 0; i < 5; i++) {
+            System.gc();
+            System.runFinalization();
+            used = Math.min(used, rt.totalMemory() - rt.freeMemory());
+            try {
+                Thread.sleep(100);
+            } catch(InterruptedException e) {
+                throw new RuntimeException(e);
+            }
+        }
+        return used;
+    }
+}
@@ -0,0 +1,70 @@
+package gershwin.bench;
+
+import clojure.lang.IFn;
+import clojure.lang.PersistentVector;
+import gershwin.lang.Stack;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Arithmetic words in a reduce-with loop over a vector of longs, with
+ * the words defined in gershwin/bench/words.gwn. The accumulator stays
+ * unboxed on the data stack, so run with -prof gc to see that a loop
+ * allocates next to nothing.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class NumericBenchmark {
+    @Param({"10000", "1000000"})
+    public int size;
+
+    private PersistentVector coll;
+    private IFn sumLongs;
+    private IFn sumSquares;
+
+    @Setup
+    public void setup() throws Exception {
+        BenchmarkSupport.boot();
+        sumLongs = BenchmarkSupport.word(BenchmarkSupport.BENCH_NS, "sum-longs");
+        sumSquares = BenchmarkSupport.word(BenchmarkSupport.BENCH_NS, "sum-squares");
+        List<Object> items = new ArrayList<Object>(size);
+        for(long i = 0; i < size; i++)
+            items.add(i);
+        coll = PersistentVector.create(items);
+        Stack.clear();
+    }
+
+    @TearDown
+    public void tearDown() {
+        Stack.clear();
+    }
+
+    private Object run(IFn word) {
+        Stack.push(coll);
+        word.invoke();
+        return Stack.popIt();
+    }
+
+    @Benchmark
+    public Object sum() {
+        return run(sumLongs);
+    }
+
+    @Benchmark
+    public Object sumOfSquares() {
+        return run(sumSquares);
+    }
+}
@@ -0,0 +1,47 @@
+package gershwin.bench;
+
+import gershwin.lang.LineNumberingPushbackReader;
+import gershwin.lang.Parser;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of {@link Parser#read} over the whole of gershwin/core.gwn.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ParserBenchmark {
+    private static final Object EOF = new Object();
+
+    private String source;
+
+    @Setup
+    public void setup() throws Exception {
+        BenchmarkSupport.boot();
+        source = BenchmarkSupport.sourceString("gershwin/core.gwn");
+    }
+
+    @Benchmark
+    public int readCore(Blackhole bh) {
+        LineNumberingPushbackReader rdr =
+            new LineNumberingPushbackReader(BenchmarkSupport.stringReader(source));
+        int forms = 0;
+        for(Object form = Parser.read(rdr, false, EOF, false);
+            form != EOF;
+            form = Parser.read(rdr, false, EOF, false)) {
+            bh.consume(form);
+            forms++;
+        }
+        return forms;
+    }
+}
@@ -0,0 +1,77 @@
+package gershwin.bench;
+
+import clojure.lang.IFn;
+import clojure.lang.PersistentVector;
+import gershwin.lang.Stack;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The core collection words, each given a quotation defined in
+ * gershwin/bench/words.gwn. Lazy results are realised in full.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class SequenceBenchmark {
+    @Param({"10000", "1000000"})
+    public int size;
+
+    private PersistentVector coll;
+    private IFn incAll;
+    private IFn evens;
+    private IFn sum;
+
+    @Setup
+    public void setup() throws Exception {
+        BenchmarkSupport.boot();
+        incAll = BenchmarkSupport.word(BenchmarkSupport.BENCH_NS, "inc-all");
+        evens = BenchmarkSupport.word(BenchmarkSupport.BENCH_NS, "evens");
+        sum = BenchmarkSupport.word(BenchmarkSupport.BENCH_NS, "sum");
+        List<Object> items = new ArrayList<Object>(size);
+        for(long i = 0; i < size; i++)
+            items.add(i);
+        coll = PersistentVector.create(items);
+        Stack.clear();
+    }
+
+    @TearDown
+    public void tearDown() {
+        Stack.clear();
+    }
+
+    private Object run(IFn word) {
+        Stack.push(coll);
+        word.invoke();
+        return clojure.lang.RT.count(Stack.popIt());
+    }
+
+    @Benchmark
+    public Object map() {
+        return run(incAll);
+    }
+
+    @Benchmark
+    public Object filter() {
+        return run(evens);
+    }
+
+    @Benchmark
+    public Object reduce() {
+        Stack.push(coll);
+        sum.invoke();
+        return Stack.popIt();
+    }
+}
@@ -0,0 +1,66 @@
+package gershwin.bench;
+
+import gershwin.lang.ArrayDataStack;
+import gershwin.lang.IDataStack;
+import gershwin.lang.Stack;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Pushing and popping, both through {@link Stack}, which looks up the
+ * current execution context each time, and on an {@link ArrayDataStack}
+ * held directly.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class StackBenchmark {
+    private static final int BATCH = 64;
+    private static final Object ITEM = 42L;
+
+    private IDataStack direct;
+
+    @Setup
+    public void setup() throws Exception {
+        BenchmarkSupport.boot();
+        direct = new ArrayDataStack();
+        Stack.clear();
+    }
+
+    @TearDown
+    public void tearDown() {
+        Stack.clear();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public Object stackPushPop() {
+        for(int i = 0; i < BATCH; i++)
+            Stack.pushResult(ITEM);
+        Object ret = null;
+        for(int i = 0; i < BATCH; i++)
+            ret = Stack.popIt();
+        return ret;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public Object directPushPop() {
+        for(int i = 0; i < BATCH; i++)
+            direct.push(ITEM);
+        Object ret = null;
+        for(int i = 0; i < BATCH; i++)
+            ret = direct.pop();
+        return ret;
+    }
+}
@@ -0,0 +1,93 @@
+package gershwin.bench;
+
+import clojure.lang.IFn;
+import gershwin.lang.Stack;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Invoking shuffle words, both the core ones directly and words defined
+ * in terms of them, which the compiler can lower to local moves.
+ *
+ * Every benchmarked word leaves the stack the same depth it found it.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class WordBenchmark {
+    private IFn swap;
+    private IFn rot;
+    private IFn dup;
+    private IFn drop;
+    private IFn swapSwap;
+    private IFn dupDrop;
+    private IFn rot3;
+    private IFn shuffleMix;
+
+    @Setup
+    public void setup() throws Exception {
+        BenchmarkSupport.boot();
+        swap = BenchmarkSupport.word("gershwin.core", "swap");
+        rot = BenchmarkSupport.word("gershwin.core", "rot");
+        dup = BenchmarkSupport.word("gershwin.core", "dup");
+        drop = BenchmarkSupport.word("gershwin.core", "drop");
+        swapSwap = BenchmarkSupport.word(BenchmarkSupport.BENCH_NS, "swap-swap");
+        dupDrop = BenchmarkSupport.word(BenchmarkSupport.BENCH_NS, "dup-drop");
+        rot3 = BenchmarkSupport.word(BenchmarkSupport.BENCH_NS, "rot3");
+        shuffleMix = BenchmarkSupport.word(BenchmarkSupport.BENCH_NS, "shuffle-mix");
+        Stack.clear();
+        Stack.push(1L);
+        Stack.push(2L);
+        Stack.push(3L);
+    }
+
+    @TearDown
+    public void tearDown() {
+        Stack.clear();
+    }
+
+    @Benchmark
+    public Object swap() {
+        return swap.invoke();
+    }
+
+    @Benchmark
+    public Object rot() {
+        return rot.invoke();
+    }
+
+    @Benchmark
+    public Object dupDrop() {
+        dup.invoke();
+        return drop.invoke();
+    }
+
+    @Benchmark
+    public Object compiledSwapSwap() {
+        return swapSwap.invoke();
+    }
+
+    @Benchmark
+    public Object compiledDupDrop() {
+        return dupDrop.invoke();
+    }
+
+    @Benchmark
+    public Object compiledRot3() {
+        return rot3.invoke();
+    }
+
+    @Benchmark
+    public Object compiledShuffleMix() {
+        return shuffleMix.invoke();
+    }
+}
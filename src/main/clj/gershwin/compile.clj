@@ -10,6 +10,28 @@
   []
   (System/getProperty compile-path-prop))
 
+(def ^{:private true}
+  parallel-prop
+  "gershwin.compile.parallel")
+
+(def ^{:private true}
+  incremental-prop
+  "gershwin.compile.incremental")
+
+(defn- compile-threads
+  "Number of threads to compile with. Libs are compiled one at a time,
+  in the order given, unless gershwin.compile.parallel is set to true
+  (one thread per processor) or to a number of threads. Only libs that
+  don't require each other can be compiled at the same time, and
+  Gershwin's own libs mostly require one another in a chain, so its
+  build gains nothing from this."
+  []
+  (let [p (System/getProperty parallel-prop)]
+    (cond
+     (or (nil? p) (= p "false")) 1
+     (= p "true") (.availableProcessors (Runtime/getRuntime))
+     :else (Integer/parseInt p))))
+
 (defn -main
   [& args]
   (when-not (compile-path-defined?)
@@ -18,6 +40,12 @@
                   "\nThis directory must also be on your CLASSPATH."))
     (System/exit 1))
   (let [path (System/getProperty compile-path-prop)]
-    (doseq [lib args]
-      (println (str "Compiling Gershwin " lib " to " path))
-      (rt/gershwin-compile (symbol lib)))))
\ No newline at end of file
+    (rt/gershwin-compile-all (map symbol args)
+                             (compile-threads)
+                             (fn [lib]
+                               (if (and (= "true" (System/getProperty incremental-prop))
+                                        (rt/gershwin-up-to-date? lib))
+                                 (println (str "Skipping unchanged Gershwin " lib))
+                                 (do
+                                   (println (str "Compiling Gershwin " lib " to " path))
+                                   (rt/gershwin-compile lib)))))))
\ No newline at end of file
@@ -93,7 +93,7 @@
   "Executes body in the context of thread-local bindings for several vars
   that often need to be set!: *ns* *warn-on-reflection* *math-context*
   *print-meta* *print-length* *print-level* *compile-path*
-  *command-line-args* *1 *2 *3 *e"
+  *command-line-args* gershwin.rt/*inline* *1 *2 *3 *e"
   [& body]
   `(binding [*ns* *ns*
              *warn-on-reflection* *warn-on-reflection*
@@ -106,6 +106,7 @@
              *command-line-args* *command-line-args*
              *unchecked-math* *unchecked-math*
              *assert* *assert*
+             rt/*inline* rt/*inline*
              *1 nil
              *2 nil
              *3 nil
@@ -123,7 +124,7 @@
         (prompt))
       (do
         (print "\n--- Data Stack:\n")
-        (doseq [item (gershwin.lang.Stack/seq)]
+        (doseq [item (gershwin.lang.Stack/snapshot)]
           (if (instance? clojure.lang.LazySeq item)
             (println "(...LazySeq...)")
             (do
@@ -1,5 +1,6 @@
 (ns gershwin.rt
-  (:import [gershwin.lang Stack Stack$StackUnderflowException]))
+  (:import [gershwin.lang Apply ArrayDataStack ExecutionContext IDataStack Stack Stack$StackUnderflowException]
+           [java.util.concurrent Callable ForkJoinPool ForkJoinTask]))
 
 (defmacro stack-void
   "The keyword :gershwin.core/stack-void is a special value that the compiler will not put on the data stack. Use this to evaluate Clojure but to prevent the return value of the Clojure expression from being added to the stack."
@@ -32,8 +33,39 @@
   (-> s name gershwin.lang.RT/formatGershwinName
       symbol resolve))
 
+(def ^:dynamic *inline*
+  "When true, the compiler expands shuffle words and words marked :inline at the point where they're used. Bind or set! to false to compile calls instead, so that redefining those words takes effect everywhere. Defaults to the gershwin.compiler.inline system property, or true."
+  (not= "false" (System/getProperty "gershwin.compiler.inline")))
+
+(def ^:dynamic *lazy-words*
+  "When true, word definitions that are loaded rather than compiled are only compiled the first time the word is invoked, so loading a lib costs little for words that are never used. Errors in a word's body are then reported when it's first invoked, and the symbols in it are resolved then too, so words defined or redefined in the meantime change what it calls. Words marked :inline are always compiled straight away. Defaults to the gershwin.compiler.lazy system property, or false."
+  (= "true" (System/getProperty "gershwin.compiler.lazy")))
+
+(def ^:dynamic *compact-source*
+  "When true, words and quotations don't hold on to the forms they were defined with. Each keeps its source as text instead, read back when it's printed or compiled. Defaults to the gershwin.compiler.compact system property, or false."
+  (= "true" (System/getProperty "gershwin.compiler.compact")))
+
+(def ^:dynamic *compile-direct*
+  "When true, compiling a Gershwin lib writes its class files directly, including the lib__init class that loads it, rather than a .clj file for Clojure to compile. Defaults to the gershwin.compile.direct system property, or false."
+  (= "true" (System/getProperty "gershwin.compile.direct")))
+
+(defn execution-context
+  "Create a context with its own, empty data stack. Var bindings in the optional map are in place whenever code is run in the context."
+  ([] (ExecutionContext.))
+  ([bindings] (ExecutionContext. (ArrayDataStack.) bindings)))
+
+(defmacro with-execution-context
+  "Evaluate body against the data stack of the given execution context instead of the current thread's."
+  [ctx & body]
+  `(let [^ExecutionContext ctx# ~ctx]
+     (.run ctx# (fn [] ~@body))))
+
 (defn st-peek [] (Stack/peek))
 
+(defn st-peek-at
+  "Like st-peek, but for the item n places below TOS."
+  [n] (Stack/peekAt n))
+
 (defn peek* [coll]
   "Like Clojure's peek, but throws an exception if the stack is empty."
   (if (zero? (count coll))
@@ -52,20 +84,222 @@
 
 (defn conj-it
   "Conj the item onto the data stack. Mutable."
-  [x] (Stack/conjMutable x))
+  [x] (Stack/push x))
 
 (defn ap
-  "Apply the function to n number of items off TOS. Defaults to top item."
-  ([a-fn] (ap 1 a-fn))
-  ([n a-fn] (apply a-fn (for [_ (range n)] (pop-it)))))
+  "Apply the function to n number of items off TOS. Defaults to top item. Items are passed in the order they're popped, TOS first. Calls with a literal n of 3 or less compile to a fixed-arity call that doesn't allocate."
+  {:inline (fn
+             ([a-fn] `(Apply/ap1 ~a-fn))
+             ([n a-fn] (case n
+                         1 `(Apply/ap1 ~a-fn)
+                         2 `(Apply/ap2 ~a-fn)
+                         3 `(Apply/ap3 ~a-fn)
+                         `(Apply/ap (int ~n) ~a-fn))))}
+  ([a-fn] (Apply/ap1 a-fn))
+  ([n a-fn] (Apply/ap (int n) a-fn)))
 
 (defn pop-n-swap
   "Remove top two items from TOS, swap, then apply the function."
-  [a-fn] (let [a (pop-it) b (pop-it)] (a-fn b a)))
+  {:inline (fn [a-fn] `(Apply/popNSwap ~a-fn))}
+  [a-fn] (Apply/popNSwap a-fn))
 
 (defn pop-n-swap2
   "x y z --> z y x and pass it that way to a Clojure function."
-  [a-fn] (let [z (pop-it) y (pop-it) x (pop-it)] (a-fn x y z)))
+  {:inline (fn [a-fn] `(Apply/popNSwap2 ~a-fn))}
+  [a-fn] (Apply/popNSwap2 a-fn))
+
+(def ^:private quot-chunk-size 32)
+
+(def ^:private quot-skip (Object.))
+
+(defn- quot-seq
+  "Lazily run the quotation on each item of coll, up to 32 items at a time, against the data stack current when the chunk is realized. Each item is pushed, the quotation invoked, and (f item result) called with what the quotation left on TOS. Whatever f returns goes in the result, unless it's quot-skip."
+  [quot f coll]
+  (lazy-seq
+   (when-let [s (seq coll)]
+     (let [^IDataStack ds (Stack/getDataStack)
+           buf (chunk-buffer quot-chunk-size)
+           more (loop [s s n 0]
+                  (if (and s (< n quot-chunk-size))
+                    (let [x (first s)]
+                      (.push ds x)
+                      (quot)
+                      (let [y (f x (.pop ds))]
+                        (when-not (identical? y quot-skip)
+                          (chunk-append buf y)))
+                      (recur (next s) (inc n)))
+                    s))]
+       (chunk-cons (chunk buf) (quot-seq quot f more))))))
+
+(defn quot-map
+  "Lazy sequence of what the quotation leaves on TOS for each item of coll, realized 32 items at a time."
+  [quot coll]
+  (quot-seq quot (fn [_ y] y) coll))
+
+(defn quot-filter
+  "Lazy sequence of the items of coll for which the quotation leaves something truthy on TOS, realized 32 items at a time."
+  [quot coll]
+  (quot-seq quot (fn [x y] (if y x quot-skip)) coll))
+
+(defn quot-remove
+  "Lazy sequence of the items of coll for which the quotation leaves something falsey on TOS, realized 32 items at a time."
+  [quot coll]
+  (quot-seq quot (fn [x y] (if y quot-skip x)) coll))
+
+;; Transducers, in the shape Clojure 1.7 gives them: a transducer takes
+;; a reducing fn and returns one, with arities for init, completion and
+;; each step. Those built from quotations push each input, invoke the
+;; quotation and pop what it leaves on TOS.
+
+(defn quot-mapping
+  "Transducer that passes on what the quotation leaves on TOS for each input."
+  [quot]
+  (fn [rf]
+    (fn
+      ([] (rf))
+      ([result] (rf result))
+      ([result x]
+         (conj-it x)
+         (quot)
+         (rf result (pop-it))))))
+
+(defn quot-filtering
+  "Transducer that passes on the inputs for which the quotation leaves something truthy on TOS."
+  [quot]
+  (fn [rf]
+    (fn
+      ([] (rf))
+      ([result] (rf result))
+      ([result x]
+         (conj-it x)
+         (quot)
+         (if (pop-it) (rf result x) result)))))
+
+(defn quot-removing
+  "Transducer that passes on the inputs for which the quotation leaves something falsey on TOS."
+  [quot]
+  (fn [rf]
+    (fn
+      ([] (rf))
+      ([result] (rf result))
+      ([result x]
+         (conj-it x)
+         (quot)
+         (if (pop-it) result (rf result x))))))
+
+(defn quot-reducer
+  "Reducing fn for which the quotation takes the result so far and the next input off the stack and leaves the new result on TOS."
+  [quot]
+  (fn
+    ([result] result)
+    ([result x]
+       (conj-it result)
+       (conj-it x)
+       (quot)
+       (pop-it))))
+
+(defn quot-reduce
+  "Push acc, then for each item of coll push it and invoke the quotation, leaving the result on TOS. The data stack is looked up once, and items are pushed as they come, so numbers the quotation leaves unboxed stay that way between steps."
+  [quot acc coll]
+  (let [^IDataStack ds (Stack/getDataStack)]
+    (.push ds acc)
+    (reduce (fn [_ x] (.push ds x) (quot) nil) nil coll)
+    :gershwin.core/stack-void))
+
+(defn xf-transduce
+  "Reduce coll with (xform f), starting from init, in a single pass. Stops early if a step returns a reduced value."
+  [xform f init coll]
+  (let [rf (xform f)]
+    (rf (reduce rf init coll))))
+
+(defn xf-into
+  "Add the inputs from coll, transformed by xform, to the collection to."
+  [to xform coll]
+  (if (instance? clojure.lang.IEditableCollection to)
+    (persistent! (xf-transduce xform
+                               (fn ([c] c) ([c x] (conj! c x)))
+                               (transient to) coll))
+    (xf-transduce xform (fn ([c] c) ([c x] (conj c x))) to coll)))
+
+(defn xf-sequence
+  "Lazy sequence of the inputs from coll, transformed by xform. Inputs are only consumed as far as is needed for the outputs asked for."
+  [xform coll]
+  (let [buf (java.util.ArrayList.)
+        rf (xform (fn ([r] r) ([r x] (.add buf x) r)))]
+    ((fn step [s]
+       (lazy-seq
+        (loop [s s]
+          (if (.isEmpty buf)
+            (cond
+             (identical? s ::done) nil
+             (seq s) (if (reduced? (rf nil (first s)))
+                       (do (rf nil) (recur ::done))
+                       (recur (rest s)))
+             :else (do (rf nil) (recur ::done)))
+            (let [out (vec buf)]
+              (.clear buf)
+              (concat out (step s)))))))
+     coll)))
+
+;; Parallel words split a vector in halves, down to parts of at most
+;; 512 items, and fork a task for each half. Quotations in one task
+;; can't see another's stack: every part, and every combination of two
+;; results, runs in an execution context of its own, with the Var
+;; bindings of whoever started the work.
+
+(defonce ^:private fork-join-pool (ForkJoinPool.))
+
+(def ^:private parallel-part-size 512)
+
+(defn- fork-join-task
+  ^ForkJoinTask [^Callable f]
+  (ForkJoinTask/adapt f))
+
+(defn- fork-join-fold
+  [v part-fn combine-fn]
+  (if (<= (count v) parallel-part-size)
+    (part-fn v)
+    (let [half (quot (count v) 2)
+          right (.fork (fork-join-task
+                        (fn [] (fork-join-fold (subvec v half) part-fn combine-fn))))]
+      (combine-fn (fork-join-fold (subvec v 0 half) part-fn combine-fn)
+                  (.join right)))))
+
+(defn parallel-fold
+  "Reduce coll by running (part-fn part) on parts of it in parallel and combining their results pairwise with (combine-fn left right). Each call runs with a data stack of its own. coll is copied into a vector first unless it is one."
+  [coll part-fn combine-fn]
+  (let [v (if (vector? coll) coll (vec coll))
+        bindings (get-thread-bindings)
+        in-context (fn [f & args]
+                     (.run (ExecutionContext. (ArrayDataStack.) bindings)
+                           (fn [] (apply f args))))]
+    (.invoke ^ForkJoinPool fork-join-pool
+             (fork-join-task
+              (fn []
+                (fork-join-fold v
+                                #(in-context part-fn %)
+                                #(in-context combine-fn %1 %2)))))))
+
+(defn quot-pmap
+  "Vector of what the quotation leaves on TOS for each item of coll, worked out in parallel."
+  [quot coll]
+  (parallel-fold coll
+                 (fn [part] (mapv (fn [x] (conj-it x) (quot) (pop-it)) part))
+                 into))
+
+(defn quot-pfilter
+  "Vector of the items of coll for which the quotation leaves something truthy on TOS, worked out in parallel."
+  [quot coll]
+  (parallel-fold coll
+                 (fn [part] (filterv (fn [x] (conj-it x) (quot) (pop-it)) part))
+                 into))
+
+(defn quot-pfold
+  "Reduce each part of coll with the quotation, as reduce-with would starting from acc, in parallel. The results for the parts are combined with combine-quot, which takes two off the stack and leaves one."
+  [quot acc combine-quot coll]
+  (parallel-fold coll
+                 (fn [part] (reduce (quot-reducer quot) acc part))
+                 (fn [x y] (conj-it x) (conj-it y) (combine-quot) (pop-it))))
 
 ;; Provide aliases for < and > since we use those as delimiters
 ;; for quotations and this messes up editors.
@@ -212,18 +446,255 @@ Possible values of :qualifier include \"GA\", \"SNAPSHOT\", \"RC-x\" \"BETA-x\""
   [form]
   (. gershwin.lang.Compiler (eval form)))
 
+;;;;
+;; Dependencies between Gershwin libs, and hashes of their sources
+;;;;
+
+(defn- spec-libs
+  "The libs named by a require/use spec, expanding prefix lists."
+  [spec]
+  (cond
+   (symbol? spec) [spec]
+
+   (and (sequential? spec) (symbol? (first spec)))
+   (let [[prefix & more] spec]
+     (if (or (empty? more) (keyword? (first more)))
+       [prefix]
+       (for [s more
+             lib (spec-libs s)]
+         (symbol (str prefix \. lib)))))
+
+   :else []))
+
+(defn- ns-form-libs
+  [[_ _ & clauses]]
+  (for [clause clauses
+        :when (and (seq? clause) (#{:require :use} (first clause)))
+        spec (rest clause)
+        lib (spec-libs spec)]
+    lib))
+
+(defn- read-top-level-forms
+  "The top-level forms of a Gershwin source, up to the first that can't
+  be read out of context, e.g. one using a namespace alias."
+  [rdr]
+  (let [eof (Object.)]
+    (loop [forms []]
+      (let [form (try (gershwin-read rdr false eof) (catch Exception _ eof))]
+        (if (identical? form eof)
+          forms
+          (recur (conj forms form)))))))
+
+(defn- gershwin-deps
+  "The libs that the Gershwin lib requires, from its ns form and any
+  top-level `'spec require` or `'spec use`."
+  [lib]
+  (when-let [in (.getResourceAsStream (clojure.lang.RT/baseLoader)
+                                      (str (subs (root-resource lib) 1) ".gwn"))]
+    (with-open [in in]
+      (let [forms (read-top-level-forms (gershwin.lang.SourceReader/forStream in))]
+        (-> (set (mapcat (fn [[form next-form]]
+                           (cond
+                            (and (seq? form) (= 'ns (first form)))
+                            (ns-form-libs form)
+
+                            (and (seq? form) (= 'quote (first form))
+                                 (#{'require 'use 'gershwin-require} next-form))
+                            (spec-libs (second form))))
+                         (partition 2 1 [nil] forms)))
+            (disj lib))))))
+
+(defn- resource-bytes
+  ^bytes [^String name]
+  (when-let [in (.getResourceAsStream (clojure.lang.RT/baseLoader) name)]
+    (with-open [in in]
+      (let [out (java.io.ByteArrayOutputStream.)
+            buf (byte-array 8192)]
+        (loop []
+          (let [n (.read in buf)]
+            (when (pos? n)
+              (.write out buf 0 n)
+              (recur))))
+        (.toByteArray out)))))
+
+(defn- hex
+  [^bytes bs]
+  (apply str (map #(format "%02x" (bit-and % 0xff)) bs)))
+
+(def ^:private codegen-classes
+  "Classes whose code decides what compiling a lib produces. Their
+  member classes are included too."
+  '[gershwin.lang.Compiler gershwin.lang.DefinitionEmitter gershwin.lang.InitEmitter
+    gershwin.lang.StackEffect gershwin.lang.Parser gershwin.lang.SourceReader
+    gershwin.lang.Arithmetic gershwin.lang.Apply gershwin.lang.RT])
+
+(def ^:private codegen-sources
+  "Sources whose definitions, such as :inline and :intrinsic words, are
+  expanded into compiled code."
+  ["gershwin/rt.clj" "gershwin/core.gwn"])
+
+(defn- class-resource
+  [^Class c]
+  (str (.replace (.getName c) \. \/) ".class"))
+
+(def ^{:private true
+       :doc "Identifies the compiler that generated some output: the Gershwin
+  version, the class files of the code generator and the sources it
+  expands definitions from, as snapshots change."}
+  compiler-fingerprint
+  (delay
+   (let [md (java.security.MessageDigest/getInstance "SHA-1")]
+     (.update md (.getBytes (str (gershwin-version)) "UTF-8"))
+     (doseq [sym codegen-classes
+             ^Class c (let [c (Class/forName (name sym))]
+                        (cons c (sort-by #(.getName ^Class %) (.getDeclaredClasses c))))]
+       (when-let [bs (resource-bytes (class-resource c))]
+         (.update md bs)))
+     (doseq [path codegen-sources]
+       (when-let [bs (resource-bytes path)]
+         (.update md bs)))
+     (hex (.digest md)))))
+
+(defn- compile-options
+  "The options that change what compiling a lib produces, as a string."
+  []
+  (pr-str {:compile-direct *compile-direct*
+           :inline *inline*
+           :lazy-words *lazy-words*
+           :compact-source *compact-source*}))
+
+(def ^:dynamic ^:private *source-hashes*
+  "Within gershwin-compile-all, an atom of the hashes worked out so far,
+  by lib, so each lib is hashed once however many libs require it."
+  nil)
+
+(defn- lib-source-hash
+  [lib hashes in-progress]
+  (if-let [h (@hashes lib)]
+    h
+    (when-let [h (if-let [source (resource-bytes (str (subs (root-resource lib) 1) ".gwn"))]
+                   (let [md (java.security.MessageDigest/getInstance "SHA-1")
+                         in-progress (conj in-progress lib)]
+                     (.update md (.getBytes ^String @compiler-fingerprint "UTF-8"))
+                     (.update md (.getBytes ^String (compile-options) "UTF-8"))
+                     (.update md source)
+                     (doseq [dep (sort (gershwin-deps lib))
+                             :when (not (in-progress dep))]
+                       (when-let [h (lib-source-hash dep hashes in-progress)]
+                         (.update md (.getBytes (str dep " " h) "UTF-8"))))
+                     (hex (.digest md)))
+                   (when-let [source (resource-bytes (str (subs (root-resource lib) 1) ".clj"))]
+                     (let [md (java.security.MessageDigest/getInstance "SHA-1")]
+                       (.update md source)
+                       (hex (.digest md)))))]
+      (swap! hashes assoc lib h)
+      h)))
+
+(defn gershwin-source-hash
+  "A SHA-1 hex string identifying what compiling the Gershwin lib would
+  produce: its source, the compiler and the compile options, and the
+  hashes of the libs it requires, transitively. For a required Clojure
+  lib only its own source is hashed, not the libs it requires in turn.
+  Nil if the lib has no Gershwin source. Within gershwin-compile-all,
+  each lib is only hashed once."
+  [lib]
+  (when (resource-bytes (str (subs (root-resource lib) 1) ".gwn"))
+    (lib-source-hash lib (or *source-hashes* (atom {})) #{})))
+
+(defn- compile-output-file
+  ^java.io.File [lib ext]
+  (when *compile-path*
+    (java.io.File. (str *compile-path* (root-resource lib) ext))))
+
+(defn gershwin-up-to-date?
+  "True if the Gershwin lib's compiled output in *compile-path* was
+  generated from its current source and dependencies, with the current
+  compile options, per the hash recorded by gershwin-compile. Only the
+  output *compile-direct* calls for counts: the __init class when it's
+  true, the .clj file otherwise."
+  [lib]
+  (let [hash-file (compile-output-file lib ".gwn.sha1")
+        out-file (compile-output-file lib (if *compile-direct* "__init.class" ".clj"))]
+    (boolean
+     (and hash-file (.exists hash-file) (.exists out-file)
+          (= (.trim ^String (slurp hash-file)) (gershwin-source-hash lib))))))
+
+(defn- record-source-hash
+  [lib]
+  (when-let [hash-file (compile-output-file lib ".gwn.sha1")]
+    (when-let [h (gershwin-source-hash lib)]
+      (.mkdirs (.getParentFile hash-file))
+      (spit hash-file (str h "\n")))))
+
 (defn gershwin-compile
   "Compiles the namespace named by the symbol lib into a set of
   classfiles. The source for the lib must be in a proper
   classpath-relative directory. The output files will go into the
   directory specified by *compile-path*, and that directory too must
-  be in the classpath."
+  be in the classpath. A hash of the source is recorded alongside, for
+  gershwin-up-to-date?."
   [lib]
   (binding [*compile-files* true]
     ;; Part of load-one definition
     (gershwin-load (root-resource lib)))
+  (record-source-hash lib)
   lib)
 
+;;;;
+;; Compiling several libs, in parallel where they don't depend on each other
+;;;;
+
+(defn gershwin-compile-all
+  "Compiles each of the libs as by compile-lib, gershwin-compile by
+  default. With more than one thread, libs are compiled on a ForkJoinPool
+  in waves, ordered by the requires in their sources: a lib is compiled
+  once all of the given libs it requires have been, so only libs that
+  don't depend on each other are compiled at the same time. The forms
+  within a lib are always compiled in order."
+  ([libs threads]
+     (gershwin-compile-all libs threads gershwin-compile))
+  ([libs threads compile-lib]
+     (binding [*source-hashes* (or *source-hashes* (atom {}))]
+       (if (<= threads 1)
+         (doseq [lib libs]
+           (compile-lib lib))
+         (let [libs (distinct libs)
+               lib-set (set libs)
+               deps (into {} (for [lib libs] [lib (set (gershwin-deps lib))]))
+               pool (java.util.concurrent.ForkJoinPool. (int threads))]
+           ;; Anything else is loaded now, so it's never loaded by two
+           ;; threads at once
+           (doseq [dep (reduce into #{} (vals deps))
+                   :when (not (lib-set dep))]
+             (require dep))
+           (try
+             (loop [done #{}
+                    remaining libs]
+               (when (seq remaining)
+                 (let [ready (filterv (fn [lib] (every? #(or (done %) (not (lib-set %))) (deps lib)))
+                                      remaining)
+                       remaining (vec (remove (set ready) remaining))]
+                   (when (empty? ready)
+                     (throw (Exception. (str "Cyclic load dependency between: "
+                                             (apply str (interpose ", " remaining))))))
+                   (doseq [^java.util.concurrent.Future f
+                           (.invokeAll pool ^java.util.Collection
+                                       (mapv (fn [lib] (bound-fn* #(compile-lib lib))) ready))]
+                     (try
+                       (.get f)
+                       (catch java.util.concurrent.ExecutionException e
+                         (throw (.getCause e)))))
+                   ;; Libs still to come would each require these; do it
+                   ;; once, here, as they would with *compile-files* set.
+                   (binding [*compile-files* true]
+                     (doseq [lib ready
+                             :when (some #(contains? (deps %) lib) remaining)]
+                       (require lib)))
+                   (recur (into done ready) remaining))))
+             (finally
+               (.shutdown pool))))))
+     libs))
+
 (defn gershwin-require
   "For now, this support requiring a single lib at a time. The optional recompile? argument indicates whether or not the Gershwin source should be (re)compiled to Clojure before attempting a proper `require` of the namespace.
 
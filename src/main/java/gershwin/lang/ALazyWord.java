@@ -0,0 +1,46 @@
+package gershwin.lang;
+
+import clojure.lang.IFn;
+import clojure.lang.IPersistentCollection;
+
+/**
+ * A word whose definition is only produced the first time the word is
+ * invoked, so that defining many words, most of which a program never
+ * uses, stays cheap.
+ */
+public abstract class ALazyWord extends Word {
+    private volatile IFn definitionFn;
+
+    protected ALazyWord(IPersistentCollection stackEffect) {
+        super(stackEffect, null);
+    }
+
+    /**
+     * Produce the definition. Called at most once, unless it throws.
+     */
+    protected abstract IFn realize();
+
+    public boolean isRealized() {
+        return this.definitionFn != null;
+    }
+
+    @Override
+    public IFn getDefinitionFn() {
+        IFn fn = this.definitionFn;
+        if(fn == null) {
+            synchronized(this) {
+                fn = this.definitionFn;
+                if(fn == null) {
+                    fn = realize();
+                    this.definitionFn = fn;
+                }
+            }
+        }
+        return fn;
+    }
+
+    @Override
+    public Object invoke() {
+        return getDefinitionFn().invoke();
+    }
+}
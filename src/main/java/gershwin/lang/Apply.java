@@ -0,0 +1,80 @@
+package gershwin.lang;
+
+import clojure.lang.ArraySeq;
+import clojure.lang.IFn;
+
+/**
+ * Calling Clojure functions with arguments taken off the data stack,
+ * behind gershwin.rt/ap, pop-n-swap and pop-n-swap2.
+ *
+ * Up to three arguments are popped into locals and passed to the
+ * matching {@code invoke}, so a call allocates nothing of its own.
+ * {@link #ap} passes arguments in the order they're popped, TOS first;
+ * the popNSwap methods pass them in stack order, TOS last.
+ */
+public class Apply {
+    private Apply() {
+    }
+
+    /**
+     * Call f with n items popped off TOS, the first one popped first.
+     */
+    public static Object ap(int n, IFn f) {
+        switch(n) {
+        case 0:
+            return f.invoke();
+        case 1:
+            return ap1(f);
+        case 2:
+            return ap2(f);
+        case 3:
+            return ap3(f);
+        default:
+            IDataStack s = Stack.getDataStack();
+            Object[] args = new Object[n];
+            for(int i = 0; i < n; i++)
+                args[i] = s.pop();
+            return f.applyTo(ArraySeq.create(args));
+        }
+    }
+
+    public static Object ap1(IFn f) {
+        return f.invoke(Stack.getDataStack().pop());
+    }
+
+    public static Object ap2(IFn f) {
+        IDataStack s = Stack.getDataStack();
+        Object a = s.pop();
+        Object b = s.pop();
+        return f.invoke(a, b);
+    }
+
+    public static Object ap3(IFn f) {
+        IDataStack s = Stack.getDataStack();
+        Object a = s.pop();
+        Object b = s.pop();
+        Object c = s.pop();
+        return f.invoke(a, b, c);
+    }
+
+    /**
+     * x y --> (f x y)
+     */
+    public static Object popNSwap(IFn f) {
+        IDataStack s = Stack.getDataStack();
+        Object y = s.pop();
+        Object x = s.pop();
+        return f.invoke(x, y);
+    }
+
+    /**
+     * x y z --> (f x y z)
+     */
+    public static Object popNSwap2(IFn f) {
+        IDataStack s = Stack.getDataStack();
+        Object z = s.pop();
+        Object y = s.pop();
+        Object x = s.pop();
+        return f.invoke(x, y, z);
+    }
+}
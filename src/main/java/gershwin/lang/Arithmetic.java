@@ -0,0 +1,225 @@
+package gershwin.lang;
+
+import clojure.lang.IFn;
+import clojure.lang.Numbers;
+
+/**
+ * The numeric words of gershwin.core, working directly on a data stack.
+ *
+ * When both operands are longs, or doubles, or one of each, they're
+ * taken off with {@link IDataStack#popLong} or {@link IDataStack#popDouble}
+ * and the result is pushed the same way, so a run of arithmetic on an
+ * {@link ArrayDataStack} never boxes. Anything else, such as ratios or
+ * big numbers, goes through Clojure's boxed {@link Numbers} operations.
+ * Results are the same as for Clojure's own functions of the same names,
+ * overflow checks included.
+ *
+ * Words marked {@code :intrinsic} in their metadata name one of these
+ * methods, which the {@link DefinitionEmitter} calls in place of the word.
+ * Each method also has a no-argument form for the word's own body.
+ */
+public class Arithmetic {
+    private static final IFn EVEN = clojure.lang.RT.var("clojure.core", "even?");
+    private static final IFn ODD = clojure.lang.RT.var("clojure.core", "odd?");
+
+    private Arithmetic() {
+    }
+
+    private static boolean bothLongs(IDataStack s) {
+        return s.isLongAt(0) && s.isLongAt(1);
+    }
+
+    /**
+     * Both longs or doubles, and at least one of them a double.
+     */
+    private static boolean bothPrimitive(IDataStack s) {
+        return (s.isLongAt(0) || s.isDoubleAt(0)) && (s.isLongAt(1) || s.isDoubleAt(1));
+    }
+
+    private static void pushBoolean(IDataStack s, boolean b) {
+        s.push(b ? Boolean.TRUE : Boolean.FALSE);
+    }
+
+    public static void add(IDataStack s) {
+        if(bothLongs(s)) {
+            long y = s.popLong();
+            s.pushLong(Numbers.add(s.popLong(), y));
+        } else if(bothPrimitive(s)) {
+            double y = s.popDouble();
+            s.pushDouble(s.popDouble() + y);
+        } else {
+            Object y = s.pop();
+            s.push(Numbers.add(s.pop(), y));
+        }
+    }
+
+    public static void subtract(IDataStack s) {
+        if(bothLongs(s)) {
+            long y = s.popLong();
+            s.pushLong(Numbers.minus(s.popLong(), y));
+        } else if(bothPrimitive(s)) {
+            double y = s.popDouble();
+            s.pushDouble(s.popDouble() - y);
+        } else {
+            Object y = s.pop();
+            s.push(Numbers.minus(s.pop(), y));
+        }
+    }
+
+    public static void multiply(IDataStack s) {
+        if(bothLongs(s)) {
+            long y = s.popLong();
+            s.pushLong(Numbers.multiply(s.popLong(), y));
+        } else if(bothPrimitive(s)) {
+            double y = s.popDouble();
+            s.pushDouble(s.popDouble() * y);
+        } else {
+            Object y = s.pop();
+            s.push(Numbers.multiply(s.pop(), y));
+        }
+    }
+
+    /**
+     * Only a division of longs with a whole result stays unboxed; Clojure
+     * gives ratios otherwise, and throws for doubles divided by zero.
+     */
+    public static void divide(IDataStack s) {
+        if(bothLongs(s)) {
+            long y = s.popLong();
+            long x = s.popLong();
+            if(y != 0 && x % y == 0 && !(x == Long.MIN_VALUE && y == -1))
+                s.pushLong(x / y);
+            else
+                s.push(Numbers.divide((Object) x, (Object) y));
+        } else {
+            Object y = s.pop();
+            s.push(Numbers.divide(s.pop(), y));
+        }
+    }
+
+    public static void lt(IDataStack s) {
+        if(bothLongs(s)) {
+            long y = s.popLong();
+            pushBoolean(s, s.popLong() < y);
+        } else if(bothPrimitive(s)) {
+            double y = s.popDouble();
+            pushBoolean(s, s.popDouble() < y);
+        } else {
+            Object y = s.pop();
+            pushBoolean(s, Numbers.lt(s.pop(), y));
+        }
+    }
+
+    public static void gt(IDataStack s) {
+        if(bothLongs(s)) {
+            long y = s.popLong();
+            pushBoolean(s, s.popLong() > y);
+        } else if(bothPrimitive(s)) {
+            double y = s.popDouble();
+            pushBoolean(s, s.popDouble() > y);
+        } else {
+            Object y = s.pop();
+            pushBoolean(s, Numbers.gt(s.pop(), y));
+        }
+    }
+
+    public static void lte(IDataStack s) {
+        if(bothLongs(s)) {
+            long y = s.popLong();
+            pushBoolean(s, s.popLong() <= y);
+        } else if(bothPrimitive(s)) {
+            double y = s.popDouble();
+            pushBoolean(s, s.popDouble() <= y);
+        } else {
+            Object y = s.pop();
+            pushBoolean(s, Numbers.lte(s.pop(), y));
+        }
+    }
+
+    public static void gte(IDataStack s) {
+        if(bothLongs(s)) {
+            long y = s.popLong();
+            pushBoolean(s, s.popLong() >= y);
+        } else if(bothPrimitive(s)) {
+            double y = s.popDouble();
+            pushBoolean(s, s.popDouble() >= y);
+        } else {
+            Object y = s.pop();
+            pushBoolean(s, Numbers.gte(s.pop(), y));
+        }
+    }
+
+    /**
+     * Numeric equality, as Clojure's ==.
+     */
+    public static void equiv(IDataStack s) {
+        if(bothLongs(s)) {
+            long y = s.popLong();
+            pushBoolean(s, s.popLong() == y);
+        } else if(bothPrimitive(s)) {
+            double y = s.popDouble();
+            pushBoolean(s, s.popDouble() == y);
+        } else {
+            Object y = s.pop();
+            pushBoolean(s, Numbers.equiv(s.pop(), y));
+        }
+    }
+
+    public static void isEven(IDataStack s) {
+        if(s.isLongAt(0))
+            pushBoolean(s, (s.popLong() & 1) == 0);
+        else
+            s.push(EVEN.invoke(s.pop()));
+    }
+
+    public static void isOdd(IDataStack s) {
+        if(s.isLongAt(0))
+            pushBoolean(s, (s.popLong() & 1) != 0);
+        else
+            s.push(ODD.invoke(s.pop()));
+    }
+
+    public static void add() {
+        add(Stack.getDataStack());
+    }
+
+    public static void subtract() {
+        subtract(Stack.getDataStack());
+    }
+
+    public static void multiply() {
+        multiply(Stack.getDataStack());
+    }
+
+    public static void divide() {
+        divide(Stack.getDataStack());
+    }
+
+    public static void lt() {
+        lt(Stack.getDataStack());
+    }
+
+    public static void gt() {
+        gt(Stack.getDataStack());
+    }
+
+    public static void lte() {
+        lte(Stack.getDataStack());
+    }
+
+    public static void gte() {
+        gte(Stack.getDataStack());
+    }
+
+    public static void equiv() {
+        equiv(Stack.getDataStack());
+    }
+
+    public static void isEven() {
+        isEven(Stack.getDataStack());
+    }
+
+    public static void isOdd() {
+        isOdd(Stack.getDataStack());
+    }
+}
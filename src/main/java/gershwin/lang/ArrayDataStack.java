@@ -0,0 +1,154 @@
+package gershwin.lang;
+
+import clojure.lang.ITransientCollection;
+import clojure.lang.PersistentVector;
+
+import java.util.Arrays;
+
+/**
+ * Data stack backed by a growable array and an index to the next free
+ * slot. There is no synchronization, so an instance must only ever be
+ * used by one thread at a time.
+ *
+ * Longs and doubles pushed with {@link #pushLong} and {@link #pushDouble}
+ * are kept unboxed in a parallel array, their slot in the main one
+ * holding a tag instead. They're only boxed if something pops or peeks
+ * at them as an Object, so numeric code that sticks to the primitive
+ * methods doesn't allocate.
+ */
+public class ArrayDataStack implements IDataStack {
+    private static final int INITIAL_CAPACITY = 32;
+
+    // Tags for slots whose value is in prims
+    private static final Object LONG = new Object();
+    private static final Object DOUBLE = new Object();
+
+    private Object[] items;
+    // Created when the first primitive is pushed
+    private long[] prims;
+    private int top = 0;
+
+    public ArrayDataStack() {
+        this(INITIAL_CAPACITY);
+    }
+
+    public ArrayDataStack(int initialCapacity) {
+        this.items = new Object[Math.max(initialCapacity, 1)];
+    }
+
+    public void push(Object item) {
+        if(top == items.length)
+            grow();
+        items[top++] = item;
+    }
+
+    public void pushLong(long x) {
+        pushPrim(LONG, x);
+    }
+
+    public void pushDouble(double x) {
+        pushPrim(DOUBLE, Double.doubleToRawLongBits(x));
+    }
+
+    private void pushPrim(Object tag, long bits) {
+        if(top == items.length)
+            grow();
+        if(prims == null)
+            prims = new long[items.length];
+        items[top] = tag;
+        prims[top++] = bits;
+    }
+
+    private void grow() {
+        items = Arrays.copyOf(items, items.length << 1);
+        if(prims != null)
+            prims = Arrays.copyOf(prims, items.length);
+    }
+
+    public Object pop() {
+        if(top == 0)
+            throw new Stack.StackUnderflowException(Stack.STACK_UNDERFLOW_MSG);
+        Object item = box(--top);
+        // Don't hold on to garbage
+        items[top] = null;
+        return item;
+    }
+
+    public long popLong() {
+        if(top == 0)
+            throw new Stack.StackUnderflowException(Stack.STACK_UNDERFLOW_MSG);
+        Object item = items[--top];
+        items[top] = null;
+        if(item == LONG)
+            return prims[top];
+        if(item == DOUBLE)
+            return (long) Double.longBitsToDouble(prims[top]);
+        return ((Number) item).longValue();
+    }
+
+    public double popDouble() {
+        if(top == 0)
+            throw new Stack.StackUnderflowException(Stack.STACK_UNDERFLOW_MSG);
+        Object item = items[--top];
+        items[top] = null;
+        if(item == DOUBLE)
+            return Double.longBitsToDouble(prims[top]);
+        if(item == LONG)
+            return (double) prims[top];
+        return ((Number) item).doubleValue();
+    }
+
+    public boolean isLongAt(int depth) {
+        if(depth < 0 || depth >= top)
+            return false;
+        Object item = items[top - 1 - depth];
+        return item == LONG || item instanceof Long;
+    }
+
+    public boolean isDoubleAt(int depth) {
+        if(depth < 0 || depth >= top)
+            return false;
+        Object item = items[top - 1 - depth];
+        return item == DOUBLE || item instanceof Double;
+    }
+
+    public Object peek() {
+        if(top == 0)
+            throw new Stack.StackUnderflowException(Stack.STACK_UNDERFLOW_MSG);
+        return box(top - 1);
+    }
+
+    public Object peekAt(int depth) {
+        if(depth < 0 || depth >= top)
+            throw new Stack.StackUnderflowException(Stack.STACK_UNDERFLOW_MSG);
+        return box(top - 1 - depth);
+    }
+
+    /**
+     * The item in slot i, as an Object.
+     */
+    private Object box(int i) {
+        Object item = items[i];
+        if(item == LONG)
+            return Long.valueOf(prims[i]);
+        if(item == DOUBLE)
+            return Double.valueOf(Double.longBitsToDouble(prims[i]));
+        return item;
+    }
+
+    public int count() {
+        return top;
+    }
+
+    public void clear() {
+        Arrays.fill(items, 0, top, null);
+        top = 0;
+    }
+
+    public PersistentVector snapshot() {
+        ITransientCollection ret = PersistentVector.EMPTY.asTransient();
+        for(int i = 0; i < top; i++)
+            ret = ret.conj(box(i));
+        return (PersistentVector) ret.persistent();
+    }
+}
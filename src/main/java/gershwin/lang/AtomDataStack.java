@@ -0,0 +1,82 @@
+package gershwin.lang;
+
+import clojure.lang.Atom;
+import clojure.lang.PersistentVector;
+
+/**
+ * The original data stack: a Clojure vector held inside an Atom. Slower
+ * than {@link ArrayDataStack}, but safe to share between threads and
+ * cheap to snapshot.
+ */
+public class AtomDataStack implements IDataStack {
+    private final Atom stackAtom = new Atom(PersistentVector.EMPTY);
+
+    public void push(Object item) {
+        for(; ;) {
+            PersistentVector v = (PersistentVector) stackAtom.deref();
+            if(stackAtom.compareAndSet(v, v.cons(item)))
+                return;
+        }
+    }
+
+    public Object pop() {
+        for(; ;) {
+            PersistentVector v = (PersistentVector) stackAtom.deref();
+            if(v.count() == 0)
+                throw new Stack.StackUnderflowException(Stack.STACK_UNDERFLOW_MSG);
+            // Try again if, between the above deref and the change to the atom,
+            // the underlying value has changed.
+            if(stackAtom.compareAndSet(v, v.pop()))
+                return v.peek();
+        }
+    }
+
+    public Object peek() {
+        return peekAt(0);
+    }
+
+    public Object peekAt(int depth) {
+        PersistentVector v = (PersistentVector) stackAtom.deref();
+        if(depth < 0 || depth >= v.count())
+            throw new Stack.StackUnderflowException(Stack.STACK_UNDERFLOW_MSG);
+        return v.nth(v.count() - 1 - depth);
+    }
+
+    public void pushLong(long x) {
+        push(Long.valueOf(x));
+    }
+
+    public void pushDouble(double x) {
+        push(Double.valueOf(x));
+    }
+
+    public long popLong() {
+        return ((Number) pop()).longValue();
+    }
+
+    public double popDouble() {
+        return ((Number) pop()).doubleValue();
+    }
+
+    public boolean isLongAt(int depth) {
+        PersistentVector v = (PersistentVector) stackAtom.deref();
+        return depth >= 0 && depth < v.count() && v.nth(v.count() - 1 - depth) instanceof Long;
+    }
+
+    public boolean isDoubleAt(int depth) {
+        PersistentVector v = (PersistentVector) stackAtom.deref();
+        return depth >= 0 && depth < v.count() && v.nth(v.count() - 1 - depth) instanceof Double;
+    }
+
+    public int count() {
+        return ((PersistentVector) stackAtom.deref()).count();
+    }
+
+    public void clear() {
+        stackAtom.reset(PersistentVector.EMPTY);
+    }
+
+    public PersistentVector snapshot() {
+        return (PersistentVector) stackAtom.deref();
+    }
+}
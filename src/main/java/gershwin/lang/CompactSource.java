@@ -0,0 +1,68 @@
+package gershwin.lang;
+
+import clojure.lang.IPersistentCollection;
+
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * How words and quotations keep their source in compact mode (see
+ * gershwin.rt/*compact-source*), instead of holding on to the forms
+ * they were read from.
+ *
+ * Source is printed as Gershwin text and kept by the definition itself
+ * as UTF-8 bytes, a byte a character on any JVM, so it goes when the
+ * definition does. Reading it back reads the text again.
+ *
+ * It isn't compressed: most bodies are a few dozen characters, too few
+ * for deflate to gain much on its own. Deflated one at a time, the 4700
+ * characters of gershwin.core's 172 bodies only come down to 4233
+ * bytes, and compressing them together would mean sharing storage that
+ * no one definition could free.
+ *
+ * Stack effects are interned here too, as most words share one of a
+ * few dozen of them. The intern table holds them weakly.
+ */
+class CompactSource {
+    private static final ConcurrentHashMap<String, Reference<IPersistentCollection>> STACK_EFFECTS =
+        new ConcurrentHashMap<String, Reference<IPersistentCollection>>();
+    private static final ReferenceQueue RQ = new ReferenceQueue();
+
+    private CompactSource() {
+    }
+
+    /**
+     * A stack effect equal to stackEffect, shared with the words that
+     * declared one while it was still in use.
+     */
+    static IPersistentCollection internStackEffect(IPersistentCollection stackEffect) {
+        if(stackEffect == null)
+            return null;
+        String key = stackEffect.toString();
+        Reference<IPersistentCollection> ref = STACK_EFFECTS.get(key);
+        IPersistentCollection existing = ref == null ? null : ref.get();
+        if(existing != null)
+            return existing;
+        clojure.lang.Util.clearCache(RQ, STACK_EFFECTS);
+        STACK_EFFECTS.put(key, new WeakReference<IPersistentCollection>(stackEffect, RQ));
+        return stackEffect;
+    }
+
+    /**
+     * The source of forms, which {@link #forms} reads back.
+     */
+    static byte[] compact(List forms) {
+        return Compiler.printSource(forms).getBytes(RT.UTF8);
+    }
+
+    /**
+     * Read back the forms in source, resolving nothing. Each call reads
+     * them afresh.
+     */
+    static List forms(byte[] source) {
+        return Compiler.readSource(new String(source, RT.UTF8));
+    }
+}
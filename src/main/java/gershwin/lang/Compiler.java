@@ -9,6 +9,7 @@ import clojure.lang.IPersistentCollection;
 import clojure.lang.IPersistentList;
 import clojure.lang.IPersistentMap;
 import clojure.lang.IPersistentStack;
+import clojure.lang.IPersistentVector;
 import clojure.lang.PersistentHashMap;
 import clojure.lang.ISeq;
 import clojure.lang.Keyword;
@@ -24,12 +25,13 @@ import static clojure.lang.RT.conj;
 import java.util.ArrayList;
 import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.FileWriter;
-import java.io.InputStreamReader;
 import java.io.IOException;
 import java.io.Reader;
+import java.io.StringReader;
+import java.io.StringWriter;
 
 public class Compiler {
     static final String GERSHWIN_VAR_SUFFIX = "__GWN__";
@@ -42,6 +44,7 @@ public class Compiler {
     static final Symbol DO = Symbol.intern("do");
     static final Symbol DOT = Symbol.intern(".");
     static final Symbol NS = Symbol.intern("ns");
+    static final Symbol STACK_EFFECT_SEPARATOR = Symbol.intern("--");
     // @todo Perhaps should be namespaced
     static final Keyword WORD_KW = Keyword.intern(null, "word");
     // DynamicClassLoader
@@ -54,6 +57,191 @@ public class Compiler {
     static final public Var VARS = Var.create().setDynamic();
     static final public Var KEYWORDS = Var.create().setDynamic();
 
+    static final Keyword INLINE_KEY = Keyword.intern(null, "inline");
+    static final Keyword NS_KEY = Keyword.intern(null, "ns");
+    static final Keyword NAME_KEY = Keyword.intern(null, "name");
+    static final Var INLINE = (Var) ClojureApi.var("gershwin.rt", "*inline*");
+    static final Var COMPILE_DIRECT = (Var) ClojureApi.var("gershwin.rt", "*compile-direct*");
+    static final Var LAZY_WORDS = (Var) ClojureApi.var("gershwin.rt", "*lazy-words*");
+    static final Var COMPACT_SOURCE = (Var) ClojureApi.var("gershwin.rt", "*compact-source*");
+    // True while compile is writing class files itself, rather than Clojure source
+    static final public Var WRITING_CLASSES = Var.create(false).setDynamic();
+
+    private static final AtomicLong loaderCount = new AtomicLong();
+
+    /**
+     * Definitions are compiled by {@link DefinitionEmitter} unless the
+     * gershwin.compiler.backend system property is "clojure", in which
+     * case they go through Clojure's compiler as {@code fn} forms.
+     */
+    static final boolean CLOJURE_BACKEND = "clojure".equals(System.getProperty("gershwin.compiler.backend"));
+
+    /**
+     * Compile the body of a word or quotation to a function that,
+     * when invoked, runs the body against the data stack.
+     *
+     * @param stackEffect  the declared stack effect, or null for quotations.
+     *                     A word declared to leave nothing behind whose body
+     *                     is a single Clojure call doesn't push that call's
+     *                     value. Otherwise it is checked against the body
+     *                     with {@link #checkStackEffect}.
+     */
+    public static IFn compileDefinitionFn(String name, List rawForms, IPersistentCollection stackEffect) {
+        if(CLOJURE_BACKEND)
+            return (IFn) clojure.lang.Compiler.eval(compileDefinition(rawForms), false);
+        List<Expr> body = analyzeBody(rawForms);
+        if(stackEffect != null)
+            checkStackEffect(name, stackEffect, body);
+        return compileBody(name, body, stackEffect);
+    }
+
+    static List<Expr> analyzeBody(List rawForms) {
+        List<Expr> body = new ArrayList<Expr>(rawForms.size());
+        for(int i = 0; i < rawForms.size(); i++) {
+            body.add(analyzeBodyForm(rawForms.get(i)));
+        }
+        return body;
+    }
+
+    static IFn compileBody(String name, List<Expr> body, IPersistentCollection stackEffect) {
+        DefinitionEmitter emitter = new DefinitionEmitter(name);
+        if(body.size() == 1 && body.get(0) instanceof ClojureExpr
+           && ((ClojureExpr) body.get(0)).val() instanceof ISeq && hasNoOutputs(stackEffect)) {
+            emitter.emitStatement(((ClojureExpr) body.get(0)).val());
+        } else {
+            for(Expr expr : body) {
+                expr.emitBody(emitter);
+            }
+        }
+        return emitter.finish();
+    }
+
+    /**
+     * Whether shuffle words and words marked :inline should be expanded
+     * where they're used; see gershwin.rt/*inline*.
+     */
+    static boolean isInlining() {
+        return !INLINE.isBound() || clojure.lang.RT.booleanCast(INLINE.deref());
+    }
+
+    /**
+     * Whether word definitions being loaded should be left uncompiled
+     * until the word is first invoked; see gershwin.rt/*lazy-words*.
+     * Never while compiling a lib, whose output needs every word.
+     */
+    static boolean isCompilingLazily() {
+        return LAZY_WORDS.isBound() && clojure.lang.RT.booleanCast(LAZY_WORDS.deref())
+            && !clojure.lang.RT.booleanCast(clojure.lang.Compiler.COMPILE_FILES.deref());
+    }
+
+    /**
+     * Whether words and quotations should keep their source as
+     * {@link CompactSource} text; see gershwin.rt/*compact-source*.
+     */
+    static boolean isCompactingSource() {
+        return COMPACT_SOURCE.isBound() && clojure.lang.RT.booleanCast(COMPACT_SOURCE.deref());
+    }
+
+    /**
+     * Whether classes generated for definitions should also be written to
+     * *compile-path*; see gershwin.rt/*compile-direct*.
+     */
+    static boolean isWritingClasses() {
+        return clojure.lang.RT.booleanCast(WRITING_CLASSES.deref())
+            && clojure.lang.RT.booleanCast(clojure.lang.Compiler.COMPILE_FILES.deref());
+    }
+
+    /**
+     * When both the declared stack effect and the effect of the body are
+     * known, make sure they agree. The body may consume fewer items than
+     * declared, but must change the depth of the stack by the same amount.
+     *
+     * @return  true if the effects were compared, false if either isn't known
+     */
+    static boolean checkStackEffect(String name, IPersistentCollection stackEffect, List<Expr> body) {
+        StackEffect declared = StackEffect.parse(stackEffect);
+        if(declared == null)
+            return false;
+        StackEffect inferred = inferStackEffect(body);
+        if(inferred == null)
+            return false;
+        int declaredNet = declared.getOutputCount() - declared.getInputCount();
+        int inferredNet = inferred.getOutputCount() - inferred.getInputCount();
+        if(declaredNet != inferredNet || inferred.getInputCount() > declared.getInputCount())
+            throw Util.runtimeException("Word " + name + " is declared with stack effect " + declared
+                                        + ", but its definition has stack effect " + inferred);
+        return true;
+    }
+
+    /**
+     * Work out the stack effect of a definition from the words it calls
+     * and the literals it pushes. Returns null if any part of the body
+     * has an effect that can't be known statically, such as a Clojure
+     * form or a word whose declared effect hasn't been checked (see
+     * {@link StackEffect#forCheckedWord}).
+     */
+    static StackEffect inferStackEffect(List<Expr> body) {
+        int inputs = 0;
+        int available = 0;
+        for(Expr expr : body) {
+            int in = 0;
+            int out;
+            if(expr instanceof QuotationExpr) {
+                out = 1;
+            } else if(expr instanceof ClojureExpr) {
+                ClojureExpr clojureExpr = (ClojureExpr) expr;
+                Object x = clojureExpr.val();
+                if(x instanceof Var && clojureExpr.isWord()) {
+                    StackEffect effect = StackEffect.forCheckedWord((Var) x);
+                    if(effect == null)
+                        return null;
+                    in = effect.getInputCount();
+                    out = effect.getOutputCount();
+                } else if(DefinitionEmitter.isSelfEvaluating(x) || DefinitionEmitter.isQuoted(x)) {
+                    out = (x == RT.STACK_VOID) ? 0 : 1;
+                } else {
+                    return null;
+                }
+            } else {
+                return null;
+            }
+            if(in > available) {
+                inputs += in - available;
+                available = 0;
+            } else {
+                available -= in;
+            }
+            available += out;
+        }
+        return StackEffect.ofCounts(inputs, available);
+    }
+
+    /**
+     * True for stack effects like {@code [x y --]}.
+     */
+    static boolean hasNoOutputs(IPersistentCollection stackEffect) {
+        if(!(stackEffect instanceof IPersistentVector))
+            return false;
+        IPersistentVector v = (IPersistentVector) stackEffect;
+        return v.count() > 0 && STACK_EFFECT_SEPARATOR.equals(v.nth(v.count() - 1));
+    }
+
+    /**
+     * Analyze a form inside a definition the way {@link #compileDefinition}
+     * treats it: symbols naming words are invoked, quotations are pushed and
+     * everything else is evaluated by Clojure.
+     */
+    static Expr analyzeBodyForm(Object rawForm) {
+        if(rawForm instanceof Symbol) {
+            Expr expr = analyzeSymbol((Symbol) rawForm);
+            if(expr instanceof ClojureExpr && ((ClojureExpr) expr).isWord())
+                return expr;
+        } else if(rawForm instanceof QuotationList) {
+            return analyzeQuotation((QuotationList) rawForm);
+        }
+        return analyzeClojure(rawForm);
+    }
+
     /**
      * Simple compilation to a Clojure function.
      *
@@ -97,6 +285,30 @@ public class Compiler {
                 definitionForms = conj(definitionForms, form);
             }
         }
+        return definitionFnForm(definitionForms);
+    }
+
+    /**
+     * The Clojure source of a word or quotation body, as written out by
+     * {@link #compile}. Words and quotations only work this out when it's
+     * first asked for, with their symbols resolved in ns.
+     */
+    static Object emitDefinition(Namespace ns, List rawForms) {
+        Var.pushThreadBindings(clojure.lang.RT.map(clojure.lang.RT.CURRENT_NS, ns));
+        try {
+            return emitDefinition(rawForms);
+        } finally {
+            Var.popThreadBindings();
+        }
+    }
+
+    /**
+     * (fn [] ~@definitionForms), returning stack-void even when there are
+     * no forms, as every compiled definition does.
+     */
+    private static Object definitionFnForm(IPersistentCollection definitionForms) {
+        if(definitionForms.count() == 0)
+            definitionForms = conj(definitionForms, RT.STACK_VOID);
         return cons(FN, cons(PersistentVector.EMPTY, clojure.lang.RT.seq(definitionForms)));
     }
 
@@ -129,27 +341,33 @@ public class Compiler {
                     definitionForms = conj(definitionForms, form);
                 }
             } else if(rawForm instanceof QuotationList) {
-                QuotationExpr quotExpr = (QuotationExpr) analyzeQuotation((QuotationList) rawForm);
-                Quotation quot = quotExpr.getQuotation();
-                // Clojure turtles all the way down, again.
-                ISeq form = withConjIt(quot.getDefinitionForm());
+                // Only the form is wanted here, so don't compile the quotation again
+                ISeq form = withConjIt(emitDefinition((QuotationList) rawForm));
                 definitionForms = conj(definitionForms, form);
             } else {
                 ISeq form = withConjIt(rawForm);
                 definitionForms = conj(definitionForms, form);
             }
         }
-        return cons(FN, cons(PersistentVector.EMPTY, clojure.lang.RT.seq(definitionForms)));
+        return definitionFnForm(definitionForms);
     }
 
+    /**
+     * Evaluate the forms read from rdr and write out compiled code that
+     * does the same when loaded. By default that's a .clj file of Clojure
+     * source in *compile-path*. When gershwin.rt/*compile-direct* is true,
+     * class files are written instead, the classes of the lib's words
+     * and top-level forms and an {@link InitEmitter __init} class to load
+     * them, so the lib can be loaded without reading any source.
+     */
     public static Object compile(Reader rdr, String sourcePath, String sourceName) throws IOException {
         Object EOF = new Object();
         Object ret = null;
-        LineNumberingPushbackReader pushbackReader =
-            (rdr instanceof LineNumberingPushbackReader) ? (LineNumberingPushbackReader) rdr :
-            new LineNumberingPushbackReader(rdr);
+        LineNumberingPushbackReader pushbackReader = pushbackReader(rdr);
+        boolean direct = COMPILE_DIRECT.isBound() && clojure.lang.RT.booleanCast(COMPILE_DIRECT.deref());
 	Var.pushThreadBindings(
                                clojure.lang.RT.mapUniqueKeys(
+                                                WRITING_CLASSES, direct,
                                                 LOCAL_ENV, null,
                                                 LOOP_LOCALS, null,
                                                 NEXT_LOCAL_NUM, 0,
@@ -158,19 +376,26 @@ public class Compiler {
                                                 CONSTANTS, PersistentVector.EMPTY,
                                                 CONSTANT_IDS, new IdentityHashMap(),
                                                 KEYWORDS, PersistentHashMap.EMPTY,
-                                                VARS, PersistentHashMap.EMPTY
-                                                //    ,LOADER, RT.makeClassLoader()
+                                                VARS, PersistentHashMap.EMPTY,
+                                                LOADER, makeClassLoader()
                                                 ));
         try {
             List<String> lines = new ArrayList<String>();
             String internalName = sourcePath
                 .replace(File.separator, "/")
                 .substring(0, sourcePath.lastIndexOf('.'));
+            InitEmitter init = direct ? new InitEmitter(internalName) : null;
             for(Object r = Parser.read(pushbackReader, false, EOF, false); r != EOF;
                 r = Parser.read(pushbackReader, false, EOF, false)) {
-                compile1(lines, r);
+                if(direct)
+                    compileDirect(init, r);
+                else
+                    compile1(lines, r);
             }
-            writeClojureFile(internalName, lines);
+            if(direct)
+                init.finish();
+            else
+                writeClojureFile(internalName, lines);
         } catch(Parser.ReaderException e) {
             throw new CompilerException(sourcePath, e.line, e.column, e.getCause());
         } finally {
@@ -179,14 +404,117 @@ public class Compiler {
         return ret;
     }
 
+    /**
+     * Top-level forms share the class loader bound by {@link #compile}.
+     */
     static void compile1(List<String> lines, Object form) {
-        Var.pushThreadBindings(
-                               clojure.lang.RT.map(LOADER, clojure.lang.RT.makeClassLoader())
-                               );
+        Expr expr = analyze(form);
+        lines.add(expr.emit());
+        expr.eval();
+    }
+
+    /**
+     * Like {@link #compile1}, but add the code to redo form's effects to
+     * the lib's __init class. Word definitions are redone with the body
+     * class compiled now; other forms are compiled as a body of their own,
+     * which is then run to evaluate the form.
+     */
+    static void compileDirect(InitEmitter init, Object form) {
+        Expr expr = analyze(form);
+        if(expr instanceof ColonExpr) {
+            ColonExpr colonExpr = (ColonExpr) expr;
+            Var var = colonExpr.define();
+            // Var.setMeta puts back :ns and :name
+            IPersistentMap meta = var.meta().without(NS_KEY).without(NAME_KEY);
+            init.emitDefineWord(var, (Word) var.getRawRoot(), meta, colonExpr.inlineSource());
+            return;
+        }
+        DefinitionEmitter emitter = new DefinitionEmitter("load");
+        if(expr instanceof QuotationExpr)
+            emitter.emitPush(((QuotationExpr) expr).getQuotation());
+        else
+            expr.emitBody(emitter);
+        IFn fn = emitter.finish();
+        fn.invoke();
+        init.emitInvoke(fn);
+    }
+
+    /**
+     * Called when a lib compiled by {@link #compileDirect} is loaded, to
+     * define one of its words as {@link ColonExpr#eval} would have.
+     */
+    public static Var defineWord(String ns, String name, IPersistentCollection stackEffect,
+                                 IFn definitionFn, IPersistentMap meta, String inlineSource) {
+        return defineWord(ns, name, new Word(stackEffect, definitionFn), meta, inlineSource);
+    }
+
+    /**
+     * As above, for a word whose body class is loaded the first time
+     * the word is invoked.
+     */
+    public static Var defineLazyWord(String ns, String name, IPersistentCollection stackEffect,
+                                     String className, IPersistentMap meta, String inlineSource) {
+        return defineWord(ns, name, new LazyClassWord(stackEffect, className), meta, inlineSource);
+    }
+
+    private static Var defineWord(String ns, String name, Word word, IPersistentMap meta, String inlineSource) {
+        Var var = clojure.lang.RT.var(ns, name);
+        if(inlineSource != null)
+            word.setInlineSource(var.ns, inlineSource);
+        var.bindRoot(word);
+        ResolutionCache.invalidate(var.ns);
+        var.setMeta(meta);
+        return var;
+    }
+
+    /**
+     * Called when a lib compiled by {@link #compileDirect} is loaded, to
+     * recreate a quotation pushed by a top-level form.
+     */
+    public static Quotation loadQuotation(IFn definitionFn, String source) {
+        Quotation quot = new Quotation(definitionFn);
+        if(source != null)
+            quot.setQuotationForms((QuotationList) readSource(source).get(0));
+        return quot;
+    }
+
+    /**
+     * Gershwin source for forms, which {@link #readSource} reads back.
+     */
+    static String printSource(List forms) {
+        StringWriter w = new StringWriter();
         try {
-            Expr expr = analyze(form);
-            lines.add(expr.emit());
-            expr.eval();
+            for(int i = 0; i < forms.size(); i++) {
+                if(i > 0)
+                    w.write(' ');
+                RT.print(forms.get(i), w);
+            }
+        } catch(IOException e) {
+            throw Util.sneakyThrow(e);
+        }
+        return w.toString();
+    }
+
+    static List readSource(String source) {
+        Object EOF = new Object();
+        char[] chars = source.toCharArray();
+        SourceReader r = new SourceReader(chars, chars.length);
+        List<Object> forms = new ArrayList<Object>();
+        for(Object form = Parser.read(r, false, EOF, false); form != EOF;
+            form = Parser.read(r, false, EOF, false)) {
+            forms.add(form);
+        }
+        return forms;
+    }
+
+    /**
+     * Analyze the body of an :inline word compiled by {@link #compileDirect},
+     * resolving its symbols in the word's namespace.
+     */
+    static List<Expr> analyzeInlineSource(Namespace ns, String source) {
+        Var.pushThreadBindings(clojure.lang.RT.map(clojure.lang.RT.CURRENT_NS, ns));
+        try {
+            return analyzeBody(readSource(source));
         } finally {
             Var.popThreadBindings();
         }
@@ -225,15 +553,15 @@ public class Compiler {
 
     /**
      * "Compile" a non-Word form by wrapping it in a call to
-     * Stack.conjIt, so the return value of the given expression
-     * ends up on the stack. The Stack.conjIt method has built-in
+     * Stack.pushResult, so the return value of the given expression
+     * ends up on the stack. The Stack.pushResult method has built-in
      * knowledge of :gershwin.core/stack-void and will not add it
      * to the stack.
      */
     private static ISeq withConjIt(Object rawForm) {
         return withStackVoid(cons(DOT,
                                   cons(Symbol.intern("gershwin.lang.Stack"),
-                                       cons(clojure.lang.RT.list(Symbol.intern("conjIt"), rawForm),
+                                       cons(clojure.lang.RT.list(Symbol.intern("pushResult"), rawForm),
                                             null))));
     }
 
@@ -268,6 +596,12 @@ public class Compiler {
 
 	String emit();
 
+        /**
+         * Generate code for this expr as one step of a word or
+         * quotation body.
+         */
+        void emitBody(DefinitionEmitter emitter);
+
 	// boolean hasJavaClass() ;
 
 	// Class getJavaClass() ;
@@ -320,7 +654,9 @@ public class Compiler {
             }
             if(form == null)
                 form = rawForm;
-            Object clojureForm = clojure.lang.Compiler.eval(form, false);
+            // Constants and already-resolved Vars evaluate to themselves,
+            // so don't bother Clojure's compiler with them.
+            Object clojureForm = isConstant(form) ? form : clojure.lang.Compiler.eval(form, false);
             // Handle functions with ^:word metadata, which are Gershwin words
             // and should be invoked.
             boolean invoked = false;
@@ -342,7 +678,7 @@ public class Compiler {
                 }
             }
             if(!invoked)
-                Stack.conjIt(clojureForm);
+                Stack.pushResult(clojureForm);
             return clojureForm;
 	}
 
@@ -389,6 +725,13 @@ public class Compiler {
                 finalForm = withConjIt(clojureForm);
             return finalForm.toString();
         }
+
+        public void emitBody(DefinitionEmitter emitter) {
+            if(this.x instanceof Var && isWord())
+                emitter.emitInvoke((Var) this.x);
+            else
+                emitter.emitValue(this.x);
+        }
     }
 
     /**
@@ -416,79 +759,129 @@ public class Compiler {
             }
         }
 
+        /**
+         * Position of the stack effect in the list. The word's name may
+         * be followed by either a metadata map or a docstring.
+         */
+        private int stackEffectIndex() {
+            Object x = this.l.get(1);
+            return (x instanceof IPersistentMap || x instanceof String) ? 2 : 1;
+        }
+
+        /**
+         * Metadata for the word's Var: whatever metadata map was given,
+         * plus the docstring and stack effect.
+         */
+        private IPersistentMap wordMeta(IPersistentCollection stackEffect) {
+            Object x = this.l.get(1);
+            IPersistentMap wordMeta = (x instanceof IPersistentMap) ? (IPersistentMap) x : PersistentHashMap.EMPTY;
+            wordMeta = wordMeta
+                .assoc(STACK_EFFECT_KEY, clojure.lang.RT.list(QUOTE, stackEffect))
+                .assoc(WORD_KW, true);
+            if(x instanceof String) {
+                wordMeta = wordMeta.assoc(DOC_KEY, x);
+            }
+            return wordMeta;
+        }
+
         /**
          * Add a word definition to the current Clojure namespace
          * as a {@link clojure.lang.Var}. Words are instances of
          * {@link Word}.
          */
         public Object eval() {
+            return define().getRawRoot();
+        }
+
+        /**
+         * Define the word, returning its Var.
+         */
+        Var define() {
+            Symbol gershwinName = gershwinSymbol((Symbol) this.l.get(0));
+            IPersistentMap wordMeta = wordMeta(stackEffect());
+            boolean inline = clojure.lang.RT.booleanCast(wordMeta.valAt(INLINE_KEY));
+            // Words that may be expanded where they're used need their body analyzed now
+            Word word = (isCompilingLazily() && !inline)
+                ? new LazySourceWord(this, (Namespace) clojure.lang.RT.CURRENT_NS.deref(), gershwinName)
+                : compileWord(inline);
+            if(word.isEffectChecked())
+                wordMeta = wordMeta.assoc(StackEffect.CHECKED_KEY, true);
+            return createVar(gershwinName, word, wordMeta);
+        }
+
+        /**
+         * Compile the word's body in the current namespace.
+         */
+        Word compileWord(boolean inline) {
             Symbol nameSym = (Symbol) this.l.get(0);
-            Symbol gershwinName = gershwinSymbol(nameSym);
-            IPersistentMap wordMeta = null;
-            String docString = null;
-            if (this.l.get(1) instanceof IPersistentMap) {
-                // Shortcut to add metadata
-                wordMeta = (IPersistentMap) this.l.get(1);
-                this.l.remove(1);
-            } else if (this.l.get(1) instanceof String) {
-                // Shortcut to add a docstring
-                docString = (String) this.l.get(1);
-                this.l.remove(1);
-            }
-            IPersistentCollection stackEffect = (IPersistentCollection) this.l.get(1);
+            int effectIndex = stackEffectIndex();
+            IPersistentCollection stackEffect = stackEffect();
             // What the reader gives us
-            List rawForms = this.l.subList(2, l.size());
+            List rawForms = this.l.subList(effectIndex + 1, l.size());
             // What we're going to store as the word's definition
-            Object fnForm = compileDefinition(rawForms);
-            IFn definition = (IFn) clojure.lang.Compiler.eval(fnForm, false);
-            // Clojure source
-            Object defForm = emitDefinition(rawForms);
-            Word word = new Word(stackEffect, definition, defForm);
-            if(wordMeta == null) {
-                wordMeta = PersistentHashMap.EMPTY;
-            }
-            wordMeta = wordMeta
-                .assoc(STACK_EFFECT_KEY, clojure.lang.RT.list(QUOTE, stackEffect))
-                .assoc(WORD_KW, true);
-            if(docString != null) {
-                wordMeta = wordMeta.assoc(DOC_KEY, docString);
-            }
-            createVar(gershwinName, word, wordMeta);
+            List<Expr> body = CLOJURE_BACKEND ? null : analyzeBody(rawForms);
+            boolean checked = body != null && checkStackEffect(nameSym.getName(), stackEffect, body);
+            IFn definition = (body == null)
+                ? compileDefinitionFn(nameSym.getName(), rawForms, stackEffect)
+                : compileBody(nameSym.getName(), body, stackEffect);
+            Word word = new Word(stackEffect, definition);
+            word.setEffectChecked(checked);
+            // Clojure source, only needed when compiling or printing
+            word.setDefinitionSource((Namespace) clojure.lang.RT.CURRENT_NS.deref(), rawForms);
+            if(body != null && inline)
+                word.setInlineBody(body);
             return word;
         }
 
         /**
-         * Emit a word definition.
+         * The declared stack effect, shared with other words declaring
+         * the same one when compacting source.
+         */
+        IPersistentCollection stackEffect() {
+            IPersistentCollection stackEffect = (IPersistentCollection) this.l.get(stackEffectIndex());
+            return isCompactingSource() ? CompactSource.internStackEffect(stackEffect) : stackEffect;
+        }
+
+        /**
+         * The source of the word's body if it's marked :inline, otherwise null.
+         */
+        String inlineSource() {
+            Object x = this.l.get(1);
+            if(!(x instanceof IPersistentMap) || !clojure.lang.RT.booleanCast(((IPersistentMap) x).valAt(INLINE_KEY)))
+                return null;
+            return printSource(this.l.subList(stackEffectIndex() + 1, l.size()));
+        }
+
+        /**
+         * Emit a word definition. The Var gets the same metadata as
+         * {@link #eval()} gives it, so stack effects survive compilation.
          *
          * @todo Consider outputting code that instantiates an
          *   an actual {@link Word} object and passes in the things it needs,
-         *   will likely need it when adding, for example, stack effect analysis
-         *   and would help distinguish the output from a random collection of
+         *   would help distinguish the output from a random collection of
          *   Clojure functions.
          */
         public String emit() {
             Symbol nameSym = (Symbol) this.l.get(0);
             Symbol gershwinName = gershwinSymbol(nameSym);
-            IPersistentMap wordMeta = null;
-            String docString = null;
-            if (this.l.get(1) instanceof IPersistentMap) {
-                // Shortcut to add metadata
-                wordMeta = (IPersistentMap) this.l.get(1);
-                this.l.remove(1);
-            } else if (this.l.get(1) instanceof String) {
-                // Shortcut to add a docstring
-                docString = (String) this.l.get(1);
-                this.l.remove(1);
-            }
-            IPersistentCollection stackEffect = (IPersistentCollection) this.l.get(1);
+            int effectIndex = stackEffectIndex();
+            IPersistentCollection stackEffect = (IPersistentCollection) this.l.get(effectIndex);
             // What the reader gives us
-            List rawForms = this.l.subList(2, l.size());
+            List rawForms = this.l.subList(effectIndex + 1, l.size());
             // What we're going to store as the word's definition.
             Object fnForm = emitDefinition(rawForms);
-            // @todo Attach metadata
-            Object varForm = withStackVoid(clojure.lang.RT.list(DEF, Symbol.intern("^:word"), gershwinName, fnForm));
+            Symbol metaSym = Symbol.intern(null, "^" + clojure.lang.RT.printString(wordMeta(stackEffect)));
+            Object varForm = withStackVoid(clojure.lang.RT.list(DEF, metaSym, gershwinName, fnForm));
             return varForm.toString();
         }
+
+        /**
+         * Word definitions aren't special inside another definition,
+         * Clojure gets to evaluate them like any other form.
+         */
+        public void emitBody(DefinitionEmitter emitter) {
+            emitter.emitValue(this.l);
+        }
     }
 
     /**
@@ -507,22 +900,29 @@ public class Compiler {
         public QuotationExpr(QuotationList l) {
             this.l = l;
             // What we're going to store as the word's definition
-            Object fnForm = compileDefinition(l);
-            IFn definition = (IFn) clojure.lang.Compiler.eval(fnForm, false);
-            Object defForm = emitDefinition(l);
-            this.quot = new Quotation(definition, defForm);
-            // Used for print output
+            IFn definition = compileDefinitionFn("quot", l, null);
+            this.quot = new Quotation(definition);
+            // Used for print output, and for the Clojure source if it's wanted
             this.quot.setQuotationForms(l);
+            this.quot.setDefinitionNs((Namespace) clojure.lang.RT.CURRENT_NS.deref());
         }
 
         public Object eval() {
-            Stack.conjIt(quot);
+            Stack.pushResult(quot);
             return quot;
         }
 
         public String emit() {
             return withConjIt(this.quot.getDefinitionForm()).toString();
         }
+
+        /**
+         * Inside a definition, the quotation's function itself is
+         * what goes on the stack.
+         */
+        public void emitBody(DefinitionEmitter emitter) {
+            emitter.emitPush(this.quot.getDefinitionFn());
+        }
     }
 
     /**
@@ -557,6 +957,10 @@ public class Compiler {
             // Look at ColonExpr's own eval/emit methods and make sure this happens.
             return word.getDefinitionForm().toString();
         }
+
+        public void emitBody(DefinitionEmitter emitter) {
+            emitter.emitInvoke(word);
+        }
     }
 
     public static boolean isWord(Object form) {
@@ -578,19 +982,21 @@ public class Compiler {
     }
 
     public static Object eval(Object form) {
-        return eval(form, true);
+        return eval(form, false);
     }
 
     /**
      * Deal with a single language form.
      *
-     * Currently uses Clojure to evaluate form. This eval
+     * Currently uses Clojure to evaluate form. Unless freshLoader is
+     * true, a class loader is only created when form could define classes
+     * and no loader is bound already (e.g., by {@link #load}). Words being
+     * invoked never need one.
      */
     public static Object eval(Object form, boolean freshLoader) {
         boolean createdLoader = false;
-        //!LOADER.isBound())
-	if(true) {
-            Var.pushThreadBindings(clojure.lang.RT.map(LOADER, clojure.lang.RT.makeClassLoader()));
+        if(freshLoader || (!LOADER.isBound() && definesClasses(form))) {
+            Var.pushThreadBindings(clojure.lang.RT.map(LOADER, makeClassLoader()));
             createdLoader = true;
         }
         try {
@@ -602,6 +1008,38 @@ public class Compiler {
         }
     }
 
+    /**
+     * Number of class loaders the compiler has created so far. Use this
+     * to check that running words doesn't allocate loaders.
+     */
+    public static long getLoaderCount() {
+        return loaderCount.get();
+    }
+
+    static Object makeClassLoader() {
+        loaderCount.incrementAndGet();
+        return clojure.lang.RT.makeClassLoader();
+    }
+
+    /**
+     * Word and quotation definitions are compiled to classes, as are
+     * Clojure forms that aren't simple constants. Symbols either resolve
+     * to something that already exists or are left to Clojure.
+     */
+    static boolean definesClasses(Object form) {
+        return !(form instanceof Symbol || isConstant(form));
+    }
+
+    static boolean isConstant(Object form) {
+        return form == null
+            || form instanceof Boolean
+            || form instanceof Number
+            || form instanceof String
+            || form instanceof Character
+            || form instanceof Keyword
+            || form instanceof Var;
+    }
+
     // @todo Make private
     public static Expr analyze(Object form) {
         // @todo Make interfaces for these if appropriate and use them for dispatch
@@ -670,14 +1108,32 @@ public class Compiler {
     }
 
     public static Object maybeSymbolIsWord(Object form) {
-        String maybeVarName = form.toString() + GERSHWIN_VAR_SUFFIX;
         Namespace currentClojureNs = (Namespace) clojure.lang.RT.CURRENT_NS.deref();
+        if(form instanceof Symbol)
+            return ResolutionCache.maybeResolve(currentClojureNs, (Symbol) form);
+        String maybeVarName = form.toString() + GERSHWIN_VAR_SUFFIX;
         // Consider whether suffix should be conditionally appended
         return clojure.lang.Compiler.maybeResolveIn(currentClojureNs, Symbol.intern(maybeVarName));
     }
 
     // Try loading: (Compiler/load (java.io.StringReader. \"(fn [] (+ (Stack/popIt) (Stack/popIt)))\"))
 
+    /**
+     * rdr as a reader the {@link Parser} can read from. Only a
+     * StringReader, which never has to wait for more input, is read a
+     * block at a time by a {@link SourceReader}; any other reader could be
+     * a console or socket, so it's read no further than each form needs.
+     * Whole files and resources are best passed as
+     * {@link SourceReader#forFile} or {@link SourceReader#forStream}.
+     */
+    static LineNumberingPushbackReader pushbackReader(Reader rdr) {
+        if(rdr instanceof LineNumberingPushbackReader)
+            return (LineNumberingPushbackReader) rdr;
+        if(rdr instanceof StringReader)
+            return new SourceReader(rdr);
+        return new LineNumberingPushbackReader(rdr);
+    }
+
     public static Object load(Reader rdr) {
 	return load(rdr, null, "NO_SOURCE_FILE");
     }
@@ -685,14 +1141,13 @@ public class Compiler {
     public static Object load(Reader rdr, String sourcePath, String sourceName) {
 	Object EOF = new Object();
 	Object ret = null;
-	LineNumberingPushbackReader pushbackReader =
-            (rdr instanceof LineNumberingPushbackReader) ? (LineNumberingPushbackReader) rdr :
-            new LineNumberingPushbackReader(rdr);
+	LineNumberingPushbackReader pushbackReader = pushbackReader(rdr);
         Var.pushThreadBindings(
-                               clojure.lang.RT.mapUniqueKeys(LOADER, clojure.lang.RT.makeClassLoader(),
+                               clojure.lang.RT.mapUniqueKeys(LOADER, makeClassLoader(),
                                                              LOCAL_ENV, null,
                                                              LOOP_LOCALS, null,
                                                              NEXT_LOCAL_NUM, 0,
+                                                             WRITING_CLASSES, false,
                                                              clojure.lang.RT.READEVAL, clojure.lang.RT.T,
                                                              clojure.lang.RT.CURRENT_NS, clojure.lang.RT.CURRENT_NS.deref()));
 	try {
@@ -716,13 +1171,8 @@ public class Compiler {
     }
 
     public static Object loadFile(String file) throws IOException {
-	FileInputStream f = new FileInputStream(file);
-	try {
-            return load(new InputStreamReader(f, RT.UTF8), new File(file).getAbsolutePath(), (new File(file)).getName());
-        }
-	finally {
-            f.close();
-        }
+        File f = new File(file);
+        return load(SourceReader.forFile(f), f.getAbsolutePath(), f.getName());
     }
 
     /**
@@ -734,13 +1184,15 @@ public class Compiler {
      * Will leave commented-out line for adding it directly to a custom
      * {@link clojure.lang.IObj} like {@link Word}
      */
-    public static void createVar(Symbol name, Object form, IPersistentMap formMeta) {
+    public static Var createVar(Symbol name, Object form, IPersistentMap formMeta) {
         // IObj formWithMeta = form.withMeta(formMeta);
         IObj varForm = (IObj) clojure.lang.RT.list(DEF, name, form);
         Var newVar = (Var) clojure.lang.Compiler.eval(varForm, false);
+        ResolutionCache.invalidate(newVar.ns);
         if(formMeta != null) {
             newVar.setMeta(formMeta);
         }
+        return newVar;
     }
 
     public static class CompilerException extends RuntimeException {
@@ -0,0 +1,709 @@
+package gershwin.lang;
+
+import clojure.asm.ClassWriter;
+import clojure.asm.Label;
+import clojure.asm.Opcodes;
+import clojure.asm.Type;
+import clojure.asm.commons.GeneratorAdapter;
+import clojure.asm.commons.Method;
+import clojure.lang.AFunction;
+import clojure.lang.DynamicClassLoader;
+import clojure.lang.IFn;
+import clojure.lang.IPersistentCollection;
+import clojure.lang.IPersistentList;
+import clojure.lang.IPersistentMap;
+import clojure.lang.IPersistentSet;
+import clojure.lang.IPersistentVector;
+import clojure.lang.ISeq;
+import clojure.lang.Keyword;
+import clojure.lang.Namespace;
+import clojure.lang.PersistentList;
+import clojure.lang.PersistentVector;
+import clojure.lang.Symbol;
+import clojure.lang.Var;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Compiles the body of a word or quotation straight to a JVM class,
+ * rather than building a Clojure fn form and handing it to Clojure's
+ * compiler.
+ *
+ * The generated class is an {@link AFunction} whose no-arg invoke runs
+ * the body top to bottom. Literals are pushed onto the data stack and
+ * words are invoked through their Var's root. Words marked
+ * {@code :shuffle} aren't called at all: the emitter keeps a virtual
+ * stack of pending constants and references to items already on the
+ * real stack, and rearranges those. Only when something else needs the
+ * real stack is it brought up to date, leaving alone whatever part of it
+ * ended up where it started, so {@code swap swap} costs nothing. Words
+ * marked {@code :inline} have their bodies expanded in place. Neither
+ * happens when gershwin.rt/*inline* is false. Runs of other Clojure
+ * forms are compiled by Clojure into a single thunk, whose result is
+ * pushed unless it is :gershwin.core/stack-void. Forms known to be void
+ * (see {@link #voidStatements}) are compiled as plain statements with no
+ * such check. Everything the body refers to lives in static fields set
+ * up when the class is initialized.
+ *
+ * While {@link Compiler#compile} is writing class files directly, the
+ * class is also written to *compile-path*, and its static initializer
+ * recreates its constants itself (see {@link #emitConstant}) rather
+ * than taking them from the compiler.
+ */
+public class DefinitionEmitter implements Opcodes {
+    private static final Symbol FN = Symbol.intern("fn");
+    private static final Symbol DOT = Symbol.intern(".");
+    private static final Symbol QUOTE = Symbol.intern("quote");
+    private static final Symbol DO = Symbol.intern("do");
+    private static final Symbol NS = Symbol.intern("ns");
+    private static final Symbol STACK = Symbol.intern("gershwin.lang.Stack");
+    private static final Symbol PUSH_RESULT = Symbol.intern("pushResult");
+    private static final Var PRINT_DUP = (Var) ClojureApi.var("clojure.core", "*print-dup*");
+
+    private static final Type OBJECT_TYPE = Type.getType(Object.class);
+    private static final Type IFN_TYPE = Type.getType(IFn.class);
+    private static final Type VAR_TYPE = Type.getType(Var.class);
+    private static final Type KEYWORD_TYPE = Type.getType(Keyword.class);
+    private static final Type RT_TYPE = Type.getType(RT.class);
+    private static final Type STACK_TYPE = Type.getType(Stack.class);
+    private static final Type DATA_STACK_TYPE = Type.getType(IDataStack.class);
+    private static final Type EMITTER_TYPE = Type.getType(DefinitionEmitter.class);
+    private static final Type AFUNCTION_TYPE = Type.getType(AFunction.class);
+    private static final Type SYMBOL_TYPE = Type.getType(Symbol.class);
+    private static final Type BOOLEAN_TYPE = Type.getType(Boolean.class);
+    private static final Type CLOJURE_RT_TYPE = Type.getType(clojure.lang.RT.class);
+    private static final Type COMPILER_TYPE = Type.getType(Compiler.class);
+    private static final Type ARITHMETIC_TYPE = Type.getType(Arithmetic.class);
+
+    private static final Method CTOR = Method.getMethod("void <init>()");
+    private static final Method CLINIT = Method.getMethod("void <clinit>()");
+    private static final Method INVOKE = Method.getMethod("Object invoke()");
+    private static final Method GET_RAW_ROOT = Method.getMethod("Object getRawRoot()");
+    private static final Method DEREF = Method.getMethod("Object deref()");
+    private static final Method PUSH = Method.getMethod("void push(Object)");
+    private static final Method POP = Method.getMethod("Object pop()");
+    private static final Method PEEK_AT = Method.getMethod("Object peekAt(int)");
+    private static final Method GET_DATA_STACK = Method.getMethod("gershwin.lang.IDataStack getDataStack()");
+    private static final Method TAKE_CONSTANTS = Method.getMethod("Object[] takeConstants(String)");
+    private static final Method LONG_VALUE_OF = Method.getMethod("Long valueOf(long)");
+    private static final Method INTEGER_VALUE_OF = Method.getMethod("Integer valueOf(int)");
+    private static final Method DOUBLE_VALUE_OF = Method.getMethod("Double valueOf(double)");
+    private static final Method CHARACTER_VALUE_OF = Method.getMethod("Character valueOf(char)");
+    private static final Method KEYWORD_INTERN = Method.getMethod("clojure.lang.Keyword intern(String,String)");
+    private static final Method SYMBOL_INTERN = Method.getMethod("clojure.lang.Symbol intern(String,String)");
+    private static final Method RT_VAR = Method.getMethod("clojure.lang.Var var(String,String)");
+    private static final Method READ_STRING = Method.getMethod("Object readString(String)");
+    private static final Method RT_VECTOR = Method.getMethod("clojure.lang.IPersistentVector vector(Object[])");
+    private static final Method RT_MAP = Method.getMethod("clojure.lang.IPersistentMap map(Object[])");
+    private static final Method RT_SET = Method.getMethod("clojure.lang.IPersistentSet set(Object[])");
+    private static final Method AS_LIST = Method.getMethod("java.util.List asList(Object[])");
+    private static final Method LIST_CREATE = Method.getMethod("clojure.lang.IPersistentList create(java.util.List)");
+    private static final Method LOAD_QUOTATION =
+        Method.getMethod("gershwin.lang.Quotation loadQuotation(clojure.lang.IFn,String)");
+
+    /**
+     * Constants of classes that have been defined but not yet initialized,
+     * keyed by class name.
+     */
+    private static final ConcurrentHashMap<String, Object[]> pendingConstants =
+        new ConcurrentHashMap<String, Object[]>();
+
+    // Guards against words that end up inlining each other
+    private static final int MAX_INLINE_DEPTH = 8;
+
+    private final String className;
+    private final Type classType;
+    private final ClassWriter cw;
+    private final GeneratorAdapter gen;
+    private final List<Object> constants = new ArrayList<Object>();
+    private final List<Type> constantTypes = new ArrayList<Type>();
+    // Clojure forms waiting to be compiled together into one thunk
+    private final List<Object> pendingForms = new ArrayList<Object>();
+    // Which of the pending forms are evaluated only for effect
+    private final List<Boolean> pendingStatements = new ArrayList<Boolean>();
+    // The namespace the pending forms have to be compiled in
+    private Object pendingNs;
+    private int dataStackLocal = -1;
+    // Values that are logically on top of the data stack, but are
+    // only pushed when something needs the real stack
+    private final List<Slot> virtualStack = new ArrayList<Slot>();
+    // How many items of the real stack the virtual stack has taken over
+    private int claimedItems = 0;
+    private final boolean inlining;
+    private int inlineDepth = 0;
+    // Whether the class is to be written to *compile-path*
+    private final boolean writing;
+
+    /**
+     * A value on the virtual stack: either a constant, or the item that
+     * was {@code depth} places below TOS of the real stack when the
+     * virtual stack was last empty.
+     */
+    private static class Slot {
+        final Object constant;
+        final int depth;
+
+        Slot(Object constant, int depth) {
+            this.constant = constant;
+            this.depth = depth;
+        }
+
+        boolean isConstant() {
+            return depth == -1;
+        }
+    }
+
+    /**
+     * @param name  the word's name, used to name the generated class
+     */
+    public DefinitionEmitter(String name) {
+        Namespace ns = (Namespace) clojure.lang.RT.CURRENT_NS.deref();
+        this.className = clojure.lang.Compiler.munge(ns.getName().getName()) + "$"
+            + clojure.lang.Compiler.munge(name) + "__" + clojure.lang.RT.nextID();
+        this.classType = Type.getObjectType(className.replace('.', '/'));
+        this.cw = new ClassWriter(ClassWriter.COMPUTE_MAXS);
+        cw.visit(V1_5, ACC_PUBLIC + ACC_SUPER + ACC_FINAL, classType.getInternalName(),
+                 null, AFUNCTION_TYPE.getInternalName(), null);
+
+        GeneratorAdapter ctor = new GeneratorAdapter(ACC_PUBLIC, CTOR, null, null, cw);
+        ctor.loadThis();
+        ctor.invokeConstructor(AFUNCTION_TYPE, CTOR);
+        ctor.returnValue();
+        ctor.endMethod();
+
+        this.gen = new GeneratorAdapter(ACC_PUBLIC, INVOKE, null, null, cw);
+        this.inlining = Compiler.isInlining();
+        this.writing = Compiler.isWritingClasses();
+    }
+
+    /**
+     * Called from the static initializer of generated classes.
+     */
+    public static Object[] takeConstants(String className) {
+        return pendingConstants.remove(className);
+    }
+
+    /**
+     * Invoke the word held by var. Non-dynamic Vars are read through their
+     * root, so redefining the word is still picked up, unless it is a
+     * shuffle, inline or intrinsic word and inlining is on.
+     */
+    public void emitInvoke(Var var) {
+        if(inlining) {
+            StackEffect shuffle = StackEffect.forShuffleWord(var);
+            if(shuffle != null) {
+                emitShuffle(shuffle);
+                return;
+            }
+            Method intrinsic = intrinsicFor(var);
+            if(intrinsic != null) {
+                flushStack();
+                loadDataStack();
+                gen.invokeStatic(ARITHMETIC_TYPE, intrinsic);
+                return;
+            }
+            Object root = var.hasRoot() ? var.getRawRoot() : null;
+            if(root instanceof Word && ((Word) root).getInlineBody() != null
+               && !var.isDynamic() && inlineDepth < MAX_INLINE_DEPTH) {
+                emitInline(var.ns, ((Word) root).getInlineBody());
+                return;
+            }
+        }
+        flushStack();
+        gen.getStatic(classType, constant(var, VAR_TYPE), VAR_TYPE);
+        gen.invokeVirtual(VAR_TYPE, var.isDynamic() ? DEREF : GET_RAW_ROOT);
+        gen.checkCast(IFN_TYPE);
+        gen.invokeInterface(IFN_TYPE, INVOKE);
+        gen.pop();
+    }
+
+    /**
+     * The {@link Arithmetic} method named by the word's :intrinsic
+     * metadata, if it has any.
+     */
+    static Method intrinsicFor(Var var) {
+        IPersistentMap meta = var.meta();
+        Object name = (meta == null) ? null : meta.valAt(StackEffect.INTRINSIC_KEY);
+        if(name == null)
+            return null;
+        try {
+            Arithmetic.class.getMethod(name.toString(), IDataStack.class);
+        } catch(NoSuchMethodException e) {
+            throw Util.runtimeException("Word " + var + " names " + name + " as its intrinsic, but there's no such method");
+        }
+        return new Method(name.toString(), Type.VOID_TYPE, new Type[] {DATA_STACK_TYPE});
+    }
+
+    /**
+     * Invoke a function that is fixed at definition time.
+     */
+    public void emitInvoke(IFn fn) {
+        flushStack();
+        gen.getStatic(classType, constant(fn, IFN_TYPE), IFN_TYPE);
+        gen.invokeInterface(IFN_TYPE, INVOKE);
+        gen.pop();
+    }
+
+    /**
+     * Push value onto the data stack as-is.
+     */
+    public void emitPush(Object value) {
+        flushForms();
+        virtualStack.add(new Slot(value, -1));
+    }
+
+    /**
+     * Expand the analyzed body of a word in place. Symbols in the body were
+     * resolved in the word's own namespace, and so are any Clojure forms.
+     */
+    private void emitInline(Namespace ns, List body) {
+        Var.pushThreadBindings(clojure.lang.RT.map(clojure.lang.RT.CURRENT_NS, ns));
+        inlineDepth++;
+        try {
+            for(Object expr : body)
+                ((Compiler.Expr) expr).emitBody(this);
+        } finally {
+            inlineDepth--;
+            Var.popThreadBindings();
+        }
+    }
+
+    /**
+     * Rearrange the top of the stack as described by a shuffle word's
+     * stack effect. No code is generated here; items below the virtual
+     * stack are simply claimed from the real one.
+     */
+    public void emitShuffle(StackEffect effect) {
+        flushForms();
+        int missing = effect.getInputCount() - virtualStack.size();
+        for(int i = 0; i < missing; i++)
+            virtualStack.add(0, new Slot(null, claimedItems++));
+        List<Slot> inputs = virtualStack.subList(virtualStack.size() - effect.getInputCount(), virtualStack.size());
+        List<Slot> outputs = new ArrayList<Slot>();
+        for(int index : effect.shuffleIndexes())
+            outputs.add(inputs.get(index));
+        inputs.clear();
+        virtualStack.addAll(outputs);
+    }
+
+    /**
+     * Bring the real data stack up to date with everything emitted so far.
+     */
+    private void flushStack() {
+        flushForms();
+        pushVirtualStack();
+    }
+
+    /**
+     * Make the real stack match the virtual one. Claimed items that are
+     * still in their original places stay put; the rest of the claimed
+     * items are popped, and everything above is pushed.
+     */
+    private void pushVirtualStack() {
+        int claimed = claimedItems;
+        int size = virtualStack.size();
+        int kept = 0;
+        while(kept < size && kept < claimed && virtualStack.get(kept).depth == claimed - 1 - kept)
+            kept++;
+        if(kept > 0) {
+            // Fail on underflow, as calling the shuffle words would have
+            loadDataStack();
+            gen.push(claimed - 1);
+            gen.invokeInterface(DATA_STACK_TYPE, PEEK_AT);
+            gen.pop();
+        }
+        int popped = claimed - kept;
+        int[] locals = new int[claimed];
+        for(int depth = 0; depth < claimed; depth++)
+            locals[depth] = -1;
+        for(int i = kept; i < size; i++) {
+            Slot slot = virtualStack.get(i);
+            if(!slot.isConstant() && locals[slot.depth] == -1)
+                locals[slot.depth] = gen.newLocal(OBJECT_TYPE);
+        }
+        for(int depth = 0; depth < popped; depth++) {
+            loadDataStack();
+            gen.invokeInterface(DATA_STACK_TYPE, POP);
+            if(locals[depth] == -1)
+                gen.pop();
+            else
+                gen.storeLocal(locals[depth]);
+        }
+        for(int depth = popped; depth < claimed; depth++) {
+            if(locals[depth] != -1) {
+                loadDataStack();
+                gen.push(depth - popped);
+                gen.invokeInterface(DATA_STACK_TYPE, PEEK_AT);
+                gen.storeLocal(locals[depth]);
+            }
+        }
+        for(int i = kept; i < size; i++) {
+            Slot slot = virtualStack.get(i);
+            loadDataStack();
+            if(!slot.isConstant())
+                gen.loadLocal(locals[slot.depth]);
+            else if(slot.constant == null)
+                gen.visitInsn(ACONST_NULL);
+            else
+                gen.getStatic(classType, constant(slot.constant, OBJECT_TYPE), OBJECT_TYPE);
+            gen.invokeInterface(DATA_STACK_TYPE, PUSH);
+        }
+        virtualStack.clear();
+        claimedItems = 0;
+    }
+
+    /**
+     * Push whatever form evaluates to. Forms that evaluate to themselves
+     * are pushed directly; anything else is left to Clojure.
+     */
+    public void emitValue(Object form) {
+        if(isSelfEvaluating(form)) {
+            if(form != RT.STACK_VOID)
+                emitPush(form);
+        } else if(isQuoted(form)) {
+            emitPush(clojure.lang.RT.second(form));
+        } else {
+            addPendingForm(form, false);
+        }
+    }
+
+    /**
+     * Evaluate form only for its effect on the stack, discarding its value.
+     */
+    public void emitStatement(Object form) {
+        if(!isSelfEvaluating(form) && !isQuoted(form))
+            addPendingForm(form, true);
+    }
+
+    private void addPendingForm(Object form, boolean statement) {
+        ISeq statements = voidStatements(form);
+        if(statements != null && statements.first() != form) {
+            for(ISeq s = statements; s != null; s = s.next())
+                addPendingForm(s.first(), true);
+            return;
+        }
+        // An ns form is a statement of its own
+        if(statements != null)
+            statement = true;
+        Object ns = clojure.lang.RT.CURRENT_NS.deref();
+        if(ns != pendingNs)
+            flushForms();
+        pendingNs = ns;
+        pendingForms.add(form);
+        pendingStatements.add(statement);
+    }
+
+    /**
+     * If form is known to evaluate to :gershwin.core/stack-void, return
+     * the forms it evaluates for their effects (possibly none), otherwise
+     * null. That covers ns forms, which Gershwin never pushes, and anything
+     * that macroexpands to {@code (do ... :gershwin.core/stack-void)}, like
+     * the stack-void macro.
+     */
+    static ISeq voidStatements(Object form) {
+        for(; ;) {
+            if(!(form instanceof ISeq))
+                return null;
+            ISeq seq = (ISeq) form;
+            Object op = seq.first();
+            if(NS.equals(op))
+                return clojure.lang.RT.list(form);
+            if(DO.equals(op)) {
+                List<Object> body = new ArrayList<Object>();
+                for(ISeq s = seq.next(); s != null; s = s.next())
+                    body.add(s.first());
+                if(body.isEmpty() || body.get(body.size() - 1) != RT.STACK_VOID)
+                    return null;
+                body.remove(body.size() - 1);
+                return clojure.lang.RT.seq(body);
+            }
+            Object expanded = clojure.lang.Compiler.macroexpand1(form);
+            if(expanded == form)
+                return null;
+            form = expanded;
+        }
+    }
+
+    /**
+     * Finish the class, load it and return an instance. Like the fn forms
+     * the compiler emits, its invoke returns :gershwin.core/stack-void.
+     */
+    public IFn finish() {
+        flushStack();
+        gen.getStatic(RT_TYPE, "STACK_VOID", KEYWORD_TYPE);
+        gen.returnValue();
+        gen.endMethod();
+        emitStaticInit();
+        cw.visitEnd();
+
+        byte[] bytecode = cw.toByteArray();
+        DynamicClassLoader loader = (DynamicClassLoader) (Compiler.LOADER.isBound()
+                                                          ? Compiler.LOADER.deref()
+                                                          : Compiler.makeClassLoader());
+        if(!writing)
+            pendingConstants.put(className, constants.toArray());
+        try {
+            if(writing)
+                clojure.lang.Compiler.writeClassFile(classType.getInternalName(), bytecode);
+            Class<?> c = loader.defineClass(className, bytecode, null);
+            return (IFn) c.getDeclaredConstructor().newInstance();
+        } catch(Exception e) {
+            throw Util.sneakyThrow(e);
+        } finally {
+            pendingConstants.remove(className);
+        }
+    }
+
+    private void emitStaticInit() {
+        GeneratorAdapter clinit = new GeneratorAdapter(ACC_STATIC, CLINIT, null, null, cw);
+        if(writing) {
+            for(int i = 0; i < constants.size(); i++) {
+                Type type = constantTypes.get(i);
+                emitConstant(clinit, constants.get(i));
+                clinit.checkCast(type);
+                clinit.putStatic(classType, constantName(i), type);
+            }
+        } else if(!constants.isEmpty()) {
+            clinit.push(className);
+            clinit.invokeStatic(EMITTER_TYPE, TAKE_CONSTANTS);
+            for(int i = 0; i < constants.size(); i++) {
+                Type type = constantTypes.get(i);
+                clinit.dup();
+                clinit.push(i);
+                clinit.arrayLoad(OBJECT_TYPE);
+                clinit.checkCast(type);
+                clinit.putStatic(classType, constantName(i), type);
+            }
+            clinit.pop();
+        }
+        clinit.returnValue();
+        clinit.endMethod();
+    }
+
+    /**
+     * Generate code that recreates value, for classes loaded from disk.
+     * Vars, keywords, symbols, boxed primitives and persistent
+     * collections of them are looked up or built directly, compiled
+     * functions are instantiated by class name, and anything else is
+     * printed with *print-dup* and read back. As with *print-dup*,
+     * metadata on collections isn't kept.
+     */
+    static void emitConstant(GeneratorAdapter gen, Object value) {
+        if(value == null) {
+            gen.visitInsn(ACONST_NULL);
+        } else if(value instanceof String) {
+            gen.push((String) value);
+        } else if(value instanceof Boolean) {
+            gen.getStatic(BOOLEAN_TYPE, ((Boolean) value).booleanValue() ? "TRUE" : "FALSE", BOOLEAN_TYPE);
+        } else if(value instanceof Long) {
+            gen.push(((Long) value).longValue());
+            gen.invokeStatic(Type.getType(Long.class), LONG_VALUE_OF);
+        } else if(value instanceof Integer) {
+            gen.push(((Integer) value).intValue());
+            gen.invokeStatic(Type.getType(Integer.class), INTEGER_VALUE_OF);
+        } else if(value instanceof Double) {
+            gen.push(((Double) value).doubleValue());
+            gen.invokeStatic(Type.getType(Double.class), DOUBLE_VALUE_OF);
+        } else if(value instanceof Character) {
+            gen.push(((Character) value).charValue());
+            gen.invokeStatic(Type.getType(Character.class), CHARACTER_VALUE_OF);
+        } else if(value instanceof Keyword) {
+            Symbol sym = ((Keyword) value).sym;
+            gen.push(sym.getNamespace());
+            gen.push(sym.getName());
+            gen.invokeStatic(KEYWORD_TYPE, KEYWORD_INTERN);
+        } else if(value instanceof Symbol && ((Symbol) value).meta() == null) {
+            gen.push(((Symbol) value).getNamespace());
+            gen.push(((Symbol) value).getName());
+            gen.invokeStatic(SYMBOL_TYPE, SYMBOL_INTERN);
+        } else if(value instanceof Var) {
+            Var var = (Var) value;
+            gen.push(var.ns.getName().getName());
+            gen.push(var.sym.getName());
+            gen.invokeStatic(CLOJURE_RT_TYPE, RT_VAR);
+        } else if(value instanceof Quotation) {
+            Quotation quot = (Quotation) value;
+            emitConstant(gen, quot.getDefinitionFn());
+            gen.checkCast(IFN_TYPE);
+            gen.push(quot.getQuotationForms() == null ? null
+                     : Compiler.printSource(Collections.singletonList(quot.getQuotationForms())));
+            gen.invokeStatic(COMPILER_TYPE, LOAD_QUOTATION);
+        } else if(isInstantiable(value)) {
+            // Written out along with everything else being compiled
+            Type type = Type.getType(value.getClass());
+            gen.newInstance(type);
+            gen.dup();
+            gen.invokeConstructor(type, CTOR);
+        } else if(value instanceof IPersistentVector) {
+            emitElements(gen, (IPersistentCollection) value);
+            gen.invokeStatic(CLOJURE_RT_TYPE, RT_VECTOR);
+        } else if(value instanceof IPersistentMap) {
+            IPersistentMap map = (IPersistentMap) value;
+            gen.push(2 * map.count());
+            gen.newArray(OBJECT_TYPE);
+            int i = 0;
+            for(ISeq s = map.seq(); s != null; s = s.next()) {
+                Map.Entry e = (Map.Entry) s.first();
+                gen.dup();
+                gen.push(i++);
+                emitConstant(gen, e.getKey());
+                gen.arrayStore(OBJECT_TYPE);
+                gen.dup();
+                gen.push(i++);
+                emitConstant(gen, e.getValue());
+                gen.arrayStore(OBJECT_TYPE);
+            }
+            gen.invokeStatic(CLOJURE_RT_TYPE, RT_MAP);
+        } else if(value instanceof IPersistentSet) {
+            emitElements(gen, (IPersistentCollection) value);
+            gen.invokeStatic(CLOJURE_RT_TYPE, RT_SET);
+        } else if(value instanceof IPersistentList && value instanceof ISeq) {
+            emitElements(gen, (IPersistentCollection) value);
+            gen.invokeStatic(Type.getType(Arrays.class), AS_LIST);
+            gen.invokeStatic(Type.getType(PersistentList.class), LIST_CREATE);
+        } else {
+            gen.push(printDup(value));
+            gen.invokeStatic(CLOJURE_RT_TYPE, READ_STRING);
+        }
+    }
+
+    /**
+     * Whether value is a compiled function that can be recreated from its
+     * class alone.
+     */
+    static boolean isInstantiable(Object value) {
+        if(!(value instanceof AFunction))
+            return false;
+        try {
+            value.getClass().getConstructor();
+            return true;
+        } catch(NoSuchMethodException e) {
+            return false;
+        }
+    }
+
+    private static void emitElements(GeneratorAdapter gen, IPersistentCollection coll) {
+        gen.push(coll.count());
+        gen.newArray(OBJECT_TYPE);
+        int i = 0;
+        for(ISeq s = coll.seq(); s != null; s = s.next()) {
+            gen.dup();
+            gen.push(i++);
+            emitConstant(gen, s.first());
+            gen.arrayStore(OBJECT_TYPE);
+        }
+    }
+
+    private static String printDup(Object value) {
+        String s;
+        Var.pushThreadBindings(clojure.lang.RT.map(PRINT_DUP, clojure.lang.RT.T));
+        try {
+            s = clojure.lang.RT.printString(value);
+        } finally {
+            Var.popThreadBindings();
+        }
+        if(s.length() == 0 || s.startsWith("#<"))
+            throw Util.runtimeException("Can't embed object in compiled code: " + s);
+        return s;
+    }
+
+    /**
+     * Compile the pending Clojure forms into one thunk. All but the last
+     * form push their own results, unless they are statements; the last
+     * form's result is pushed by the generated code, so a lone form never
+     * touches the thread-local stack lookup.
+     */
+    private void flushForms() {
+        if(pendingForms.isEmpty())
+            return;
+        // The forms may use anything before them
+        pushVirtualStack();
+        List<Object> body = new ArrayList<Object>();
+        int last = pendingForms.size() - 1;
+        for(int i = 0; i < last; i++) {
+            Object form = pendingForms.get(i);
+            body.add(pendingStatements.get(i) ? form
+                     : clojure.lang.RT.list(DOT, STACK, clojure.lang.RT.list(PUSH_RESULT, form)));
+        }
+        body.add(pendingForms.get(last));
+        boolean lastIsStatement = pendingStatements.get(last);
+        pendingForms.clear();
+        pendingStatements.clear();
+        ISeq fnForm = clojure.lang.RT.cons(FN, clojure.lang.RT.cons(PersistentVector.EMPTY,
+                                                                    clojure.lang.RT.seq(body)));
+        IFn thunk;
+        Var.pushThreadBindings(clojure.lang.RT.map(clojure.lang.RT.CURRENT_NS, pendingNs));
+        try {
+            thunk = (IFn) clojure.lang.Compiler.eval(fnForm, false);
+        } finally {
+            Var.popThreadBindings();
+        }
+
+        if(lastIsStatement) {
+            gen.getStatic(classType, constant(thunk, IFN_TYPE), IFN_TYPE);
+            gen.invokeInterface(IFN_TYPE, INVOKE);
+            gen.pop();
+            return;
+        }
+        loadDataStack();
+        gen.getStatic(classType, constant(thunk, IFN_TYPE), IFN_TYPE);
+        gen.invokeInterface(IFN_TYPE, INVOKE);
+        Label skip = gen.newLabel();
+        Label end = gen.newLabel();
+        gen.dup();
+        gen.getStatic(RT_TYPE, "STACK_VOID", KEYWORD_TYPE);
+        gen.ifCmp(OBJECT_TYPE, GeneratorAdapter.EQ, skip);
+        gen.invokeInterface(DATA_STACK_TYPE, PUSH);
+        gen.goTo(end);
+        gen.mark(skip);
+        gen.pop();
+        gen.pop();
+        gen.mark(end);
+    }
+
+    /**
+     * The calling thread's data stack is looked up once per invocation,
+     * the first time the body needs it.
+     */
+    private void loadDataStack() {
+        if(dataStackLocal == -1) {
+            gen.invokeStatic(STACK_TYPE, GET_DATA_STACK);
+            dataStackLocal = gen.newLocal(DATA_STACK_TYPE);
+            gen.storeLocal(dataStackLocal);
+        }
+        gen.loadLocal(dataStackLocal);
+    }
+
+    private String constant(Object value, Type type) {
+        int i = constants.size();
+        constants.add(value);
+        constantTypes.add(type);
+        cw.visitField(ACC_PRIVATE + ACC_STATIC + ACC_FINAL, constantName(i), type.getDescriptor(), null, null)
+            .visitEnd();
+        return constantName(i);
+    }
+
+    private static String constantName(int i) {
+        return "const__" + i;
+    }
+
+    static boolean isSelfEvaluating(Object form) {
+        return form == null
+            || form instanceof Boolean
+            || form instanceof Number
+            || form instanceof String
+            || form instanceof Character
+            || form instanceof Keyword;
+    }
+
+    static boolean isQuoted(Object form) {
+        return form instanceof ISeq
+            && QUOTE.equals(((ISeq) form).first())
+            && clojure.lang.RT.count(form) == 2;
+    }
+}
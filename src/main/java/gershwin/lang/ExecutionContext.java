@@ -0,0 +1,100 @@
+package gershwin.lang;
+
+import clojure.lang.AFn;
+import clojure.lang.IFn;
+import clojure.lang.IPersistentMap;
+import clojure.lang.PersistentHashMap;
+import clojure.lang.Var;
+
+import java.io.Reader;
+
+/**
+ * Everything a running Gershwin program needs that can't be shared
+ * between threads: a data stack plus any Var bindings that should be
+ * in place while the program runs.
+ *
+ * Each thread gets its own context the first time it touches the
+ * {@link Stack}, so independent Gershwin programs can run on as many
+ * threads as you like. To control which data stack a piece of code
+ * sees, create a context and {@link #run(IFn)} the code in it.
+ */
+public class ExecutionContext {
+    private static final ThreadLocal<ExecutionContext> CURRENT = new ThreadLocal<ExecutionContext>() {
+        @Override
+        protected ExecutionContext initialValue() {
+            return new ExecutionContext();
+        }
+    };
+
+    private final IDataStack dataStack;
+    private final IPersistentMap bindings;
+
+    public ExecutionContext() {
+        this(new ArrayDataStack());
+    }
+
+    public ExecutionContext(IDataStack dataStack) {
+        this(dataStack, PersistentHashMap.EMPTY);
+    }
+
+    /**
+     * @param bindings  a map of Var to value, pushed as thread bindings
+     *                  for the duration of each {@link #run(IFn)}
+     */
+    public ExecutionContext(IDataStack dataStack, IPersistentMap bindings) {
+        if(dataStack == null)
+            throw new IllegalArgumentException("Data stack implementation cannot be null");
+        this.dataStack = dataStack;
+        this.bindings = bindings == null ? PersistentHashMap.EMPTY : bindings;
+    }
+
+    /**
+     * The context bound to the calling thread.
+     */
+    public static ExecutionContext current() {
+        return CURRENT.get();
+    }
+
+    public IDataStack getDataStack() {
+        return this.dataStack;
+    }
+
+    public IPersistentMap getBindings() {
+        return this.bindings;
+    }
+
+    /**
+     * Invoke fn on the calling thread with this context in place of the
+     * thread's current one. The previous context is restored afterwards.
+     */
+    public Object run(IFn fn) {
+        ExecutionContext previous = CURRENT.get();
+        boolean pushedBindings = bindings.count() > 0;
+        CURRENT.set(this);
+        if(pushedBindings)
+            Var.pushThreadBindings(bindings);
+        try {
+            return fn.invoke();
+        } finally {
+            if(pushedBindings)
+                Var.popThreadBindings();
+            CURRENT.set(previous);
+        }
+    }
+
+    public Object eval(final Object form) {
+        return run(new AFn() {
+                public Object invoke() {
+                    return Compiler.eval(form);
+                }
+            });
+    }
+
+    public Object load(final Reader rdr) {
+        return run(new AFn() {
+                public Object invoke() {
+                    return Compiler.load(rdr);
+                }
+            });
+    }
+}
@@ -0,0 +1,68 @@
+package gershwin.lang;
+
+import clojure.lang.PersistentVector;
+
+/**
+ * Storage behind the static {@link Stack} API. Implementations decide
+ * how items are held; {@link Stack} takes care of Gershwin-specific
+ * concerns like :gershwin.core/stack-void.
+ */
+public interface IDataStack {
+    public void push(Object item);
+
+    /**
+     * Remove and return the item on TOS.
+     */
+    public Object pop();
+
+    public Object peek();
+
+    /**
+     * Return the item {@code depth} places below TOS without removing
+     * it, so {@code peekAt(0)} is the same as {@link #peek()}.
+     */
+    public Object peekAt(int depth);
+
+    /**
+     * Put a long on TOS. The stack may hold it unboxed; either way it is
+     * popped or peeked at as a {@link Long}, unless it is taken off with
+     * {@link #popLong()} or {@link #popDouble()}.
+     */
+    public void pushLong(long x);
+
+    /**
+     * As {@link #pushLong}, for a double.
+     */
+    public void pushDouble(double x);
+
+    /**
+     * Remove the number on TOS and return it as a long.
+     */
+    public long popLong();
+
+    /**
+     * Remove the number on TOS and return it as a double.
+     */
+    public double popDouble();
+
+    /**
+     * True if the item {@code depth} places below TOS is a long, whether
+     * pushed with {@link #pushLong} or as a {@link Long}. False when the
+     * stack isn't that deep.
+     */
+    public boolean isLongAt(int depth);
+
+    /**
+     * As {@link #isLongAt}, for doubles.
+     */
+    public boolean isDoubleAt(int depth);
+
+    public int count();
+
+    public void clear();
+
+    /**
+     * Persistent copy of the stack, bottom item first.
+     */
+    public PersistentVector snapshot();
+}
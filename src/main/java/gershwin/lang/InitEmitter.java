@@ -0,0 +1,159 @@
+package gershwin.lang;
+
+import clojure.asm.ClassWriter;
+import clojure.asm.Label;
+import clojure.asm.Opcodes;
+import clojure.asm.Type;
+import clojure.asm.commons.GeneratorAdapter;
+import clojure.asm.commons.Method;
+import clojure.lang.IFn;
+import clojure.lang.IPersistentCollection;
+import clojure.lang.IPersistentMap;
+import clojure.lang.Var;
+
+import java.io.IOException;
+
+/**
+ * Writes the {@code __init} class of a Gershwin lib that {@link Compiler#compile}
+ * compiles straight to class files, the class that {@link RT#load} looks
+ * for before falling back to the lib's source.
+ *
+ * Initializing the class binds *ns* and does what loading the source
+ * would, one top-level form at a time. A word definition becomes a call
+ * to {@link Compiler#defineLazyWord} with the name of the word's body
+ * class, which was written when the word was compiled, so the lib's
+ * words cost no more than their Vars until they're used. Any other form
+ * is compiled by a {@link DefinitionEmitter} of its own and invoked.
+ * Values are created as they're needed, in order, so nothing refers to
+ * a namespace before the lib's ns form has set it up.
+ */
+public class InitEmitter implements Opcodes {
+    private static final Type OBJECT_TYPE = Type.getType(Object.class);
+    private static final Type IFN_TYPE = Type.getType(IFn.class);
+    private static final Type VAR_TYPE = Type.getType(Var.class);
+    private static final Type THROWABLE_TYPE = Type.getType(Throwable.class);
+    private static final Type CLOJURE_RT_TYPE = Type.getType(clojure.lang.RT.class);
+    private static final Type COMPILER_TYPE = Type.getType(Compiler.class);
+    private static final Type PERSISTENT_COLLECTION_TYPE = Type.getType(IPersistentCollection.class);
+    private static final Type PERSISTENT_MAP_TYPE = Type.getType(IPersistentMap.class);
+
+    private static final Method CLINIT = Method.getMethod("void <clinit>()");
+    private static final Method LOAD = Method.getMethod("void load()");
+    private static final Method INVOKE = Method.getMethod("Object invoke()");
+    private static final Method DEREF = Method.getMethod("Object deref()");
+    private static final Method MAP_UNIQUE_KEYS = Method.getMethod("clojure.lang.IPersistentMap mapUniqueKeys(Object[])");
+    private static final Method PUSH_THREAD_BINDINGS = Method.getMethod("void pushThreadBindings(clojure.lang.Associative)");
+    private static final Method POP_THREAD_BINDINGS = Method.getMethod("void popThreadBindings()");
+    private static final Method DEFINE_WORD =
+        Method.getMethod("clojure.lang.Var defineWord(String,String,clojure.lang.IPersistentCollection,"
+                         + "clojure.lang.IFn,clojure.lang.IPersistentMap,String)");
+    private static final Method DEFINE_LAZY_WORD =
+        Method.getMethod("clojure.lang.Var defineLazyWord(String,String,clojure.lang.IPersistentCollection,"
+                         + "String,clojure.lang.IPersistentMap,String)");
+
+    private final Type classType;
+    private final ClassWriter cw;
+    // Body of the static load() method, one step per top-level form
+    private final GeneratorAdapter load;
+
+    /**
+     * @param internalName  the lib's resource path without its extension,
+     *                      e.g. gershwin/core
+     */
+    public InitEmitter(String internalName) {
+        this.classType = Type.getObjectType(internalName + clojure.lang.RT.LOADER_SUFFIX);
+        this.cw = new ClassWriter(ClassWriter.COMPUTE_MAXS);
+        cw.visit(V1_5, ACC_PUBLIC + ACC_SUPER + ACC_FINAL, classType.getInternalName(),
+                 null, OBJECT_TYPE.getInternalName(), null);
+        this.load = new GeneratorAdapter(ACC_PUBLIC + ACC_STATIC, LOAD, null, null, cw);
+    }
+
+    /**
+     * Define var as holding word, with the given metadata.
+     *
+     * @param inlineSource  for words marked :inline, the source of the
+     *                      body, so that it can be expanded in code
+     *                      compiled after the lib is loaded; otherwise null
+     */
+    public void emitDefineWord(Var var, Word word, IPersistentMap meta, String inlineSource) {
+        load.push(var.ns.getName().getName());
+        load.push(var.sym.getName());
+        DefinitionEmitter.emitConstant(load, word.getStackEffect());
+        load.checkCast(PERSISTENT_COLLECTION_TYPE);
+        IFn definitionFn = word.getDefinitionFn();
+        boolean lazy = DefinitionEmitter.isInstantiable(definitionFn);
+        if(lazy) {
+            load.push(definitionFn.getClass().getName());
+        } else {
+            DefinitionEmitter.emitConstant(load, definitionFn);
+            load.checkCast(IFN_TYPE);
+        }
+        DefinitionEmitter.emitConstant(load, meta);
+        load.checkCast(PERSISTENT_MAP_TYPE);
+        load.push(inlineSource);
+        load.invokeStatic(COMPILER_TYPE, lazy ? DEFINE_LAZY_WORD : DEFINE_WORD);
+        load.pop();
+    }
+
+    /**
+     * Invoke fn, a compiled top-level form.
+     */
+    public void emitInvoke(IFn fn) {
+        DefinitionEmitter.emitConstant(load, fn);
+        load.checkCast(IFN_TYPE);
+        load.invokeInterface(IFN_TYPE, INVOKE);
+        load.pop();
+    }
+
+    /**
+     * Finish the class and write it to *compile-path*.
+     */
+    public void finish() throws IOException {
+        load.returnValue();
+        load.endMethod();
+        emitStaticInit();
+        cw.visitEnd();
+        clojure.lang.Compiler.writeClassFile(classType.getInternalName(), cw.toByteArray());
+    }
+
+    /**
+     * As with a Clojure lib's __init class, load() runs with *ns* bound
+     * to its current value, so the lib's ns form doesn't change it for
+     * whoever loaded the lib.
+     */
+    private void emitStaticInit() {
+        GeneratorAdapter clinit = new GeneratorAdapter(ACC_STATIC, CLINIT, null, null, cw);
+        Label start = clinit.newLabel();
+        Label end = clinit.newLabel();
+        Label handler = clinit.newLabel();
+        clinit.visitTryCatchBlock(start, end, handler, null);
+
+        clinit.push(2);
+        clinit.newArray(OBJECT_TYPE);
+        clinit.dup();
+        clinit.push(0);
+        clinit.getStatic(CLOJURE_RT_TYPE, "CURRENT_NS", VAR_TYPE);
+        clinit.arrayStore(OBJECT_TYPE);
+        clinit.dup();
+        clinit.push(1);
+        clinit.getStatic(CLOJURE_RT_TYPE, "CURRENT_NS", VAR_TYPE);
+        clinit.invokeVirtual(VAR_TYPE, DEREF);
+        clinit.arrayStore(OBJECT_TYPE);
+        clinit.invokeStatic(CLOJURE_RT_TYPE, MAP_UNIQUE_KEYS);
+        clinit.invokeStatic(VAR_TYPE, PUSH_THREAD_BINDINGS);
+
+        clinit.mark(start);
+        clinit.invokeStatic(classType, LOAD);
+        clinit.mark(end);
+        clinit.invokeStatic(VAR_TYPE, POP_THREAD_BINDINGS);
+        clinit.returnValue();
+
+        clinit.mark(handler);
+        int thrown = clinit.newLocal(THROWABLE_TYPE);
+        clinit.storeLocal(thrown);
+        clinit.invokeStatic(VAR_TYPE, POP_THREAD_BINDINGS);
+        clinit.loadLocal(thrown);
+        clinit.throwException();
+        clinit.endMethod();
+    }
+}
@@ -0,0 +1,30 @@
+package gershwin.lang;
+
+import clojure.lang.IFn;
+import clojure.lang.IPersistentCollection;
+
+/**
+ * A word from a lib compiled to class files, whose body class isn't
+ * loaded until the word is first invoked.
+ */
+public class LazyClassWord extends ALazyWord {
+    private final String className;
+
+    public LazyClassWord(IPersistentCollection stackEffect, String className) {
+        super(stackEffect);
+        this.className = className;
+    }
+
+    public String getClassName() {
+        return this.className;
+    }
+
+    protected IFn realize() {
+        try {
+            Class<?> c = clojure.lang.RT.classForName(this.className);
+            return (IFn) c.getDeclaredConstructor().newInstance();
+        } catch(Exception e) {
+            throw Util.sneakyThrow(e);
+        }
+    }
+}
@@ -0,0 +1,60 @@
+package gershwin.lang;
+
+import clojure.lang.IFn;
+import clojure.lang.Namespace;
+import clojure.lang.Symbol;
+import clojure.lang.Var;
+
+/**
+ * A word defined while gershwin.rt/*lazy-words* is true. It keeps the
+ * word's definition as read and compiles it, in the namespace it was
+ * defined in, the first time the word is invoked. The compiled
+ * {@link Word} then replaces this one as the root of the word's Var,
+ * unless the word has been redefined in the meantime.
+ *
+ * Symbols in the body are resolved when it's compiled, not when it's
+ * read, so a word defined or redefined after this one, but before its
+ * first invocation, is what the body ends up calling.
+ */
+public class LazySourceWord extends ALazyWord {
+    private Compiler.ColonExpr expr;
+    private final Namespace ns;
+    private final Symbol name;
+    // Set by realize, before getDefinitionFn publishes the definition
+    private Word compiled;
+
+    LazySourceWord(Compiler.ColonExpr expr, Namespace ns, Symbol name) {
+        super(expr.stackEffect());
+        this.expr = expr;
+        this.ns = ns;
+        this.name = name;
+    }
+
+    protected IFn realize() {
+        Word word;
+        Var.pushThreadBindings(clojure.lang.RT.map(clojure.lang.RT.CURRENT_NS, this.ns));
+        try {
+            word = this.expr.compileWord(false);
+        } finally {
+            Var.popThreadBindings();
+        }
+        this.expr = null;
+        this.compiled = word;
+        Var var = this.ns.findInternedVar(this.name);
+        if(var != null && var.getRawRoot() == this) {
+            var.bindRoot(word);
+            if(word.isEffectChecked())
+                var.setMeta(var.meta().assoc(StackEffect.CHECKED_KEY, true));
+        }
+        return word.getDefinitionFn();
+    }
+
+    /**
+     * Compiles the word, if it hasn't been invoked yet, for its source.
+     */
+    @Override
+    public Object getDefinitionForm() {
+        getDefinitionFn();
+        return this.compiled.getDefinitionForm();
+    }
+}
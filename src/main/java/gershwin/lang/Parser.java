@@ -16,6 +16,7 @@ package gershwin.lang;
 
 import clojure.lang.AFn;
 import clojure.lang.IFn;
+import clojure.lang.Keyword;
 import clojure.lang.LazilyPersistentVector;
 import clojure.lang.LispReader;
 
@@ -27,6 +28,7 @@ import java.util.List;
 
 public class Parser {
     static IFn[] macros = new IFn[256];
+    static final Object NOT_LEXED = new Object();
     static {
 	macros['['] = new VectorReader();
 	macros['{'] = new MapReader();
@@ -60,6 +62,19 @@ public class Parser {
         }
     }
 
+    /**
+     * Characters that end a token, as {@link LispReader}'s terminating macros do.
+     */
+    static boolean isTerminatingMacro(int ch) {
+        switch(ch) {
+        case '"': case ';': case '@': case '^': case '`': case '~':
+        case '(': case ')': case '[': case ']': case '{': case '}': case '\\':
+            return true;
+        default:
+            return false;
+        }
+    }
+
     static public int read1(Reader r){
 	try {
             return r.read();
@@ -145,6 +160,15 @@ public class Parser {
                     return ret;
                 }
 
+                // Symbols, numbers, keywords and strings make up most of a
+                // .gwn file, so we read the common cases ourselves when the
+                // source is buffered.
+                if(r instanceof SourceReader) {
+                    Object ret = readToken((SourceReader) r, ch);
+                    if(ret != NOT_LEXED)
+                        return ret;
+                }
+
                 /**** End Gershwin extensions to Clojure reading ****/
                 // Everything else is just Clojure.
                 // System.out.println("Clojure Reader => " + (char) ch);
@@ -159,6 +183,114 @@ public class Parser {
         }
     }
 
+    /**
+     * Lex a plain symbol, decimal long, simple keyword or string with no
+     * escapes, starting with ch. Anything else leaves the reader where it
+     * was and returns {@link #NOT_LEXED} for {@link LispReader} to read.
+     */
+    static Object readToken(SourceReader r, int ch) throws IOException {
+        if(ch == '\'' || ch == '#' || ch == '%' || (ch != '"' && isTerminatingMacro(ch)))
+            return NOT_LEXED;
+        r.unread(ch);
+        r.markPosition();
+        r.read();
+        Object ret;
+        if(ch == '"')
+            ret = lexString(r);
+        else if(ch == ':')
+            ret = lexKeyword(r);
+        else if(isDigit(ch) || ((ch == '+' || ch == '-') && isDigit(r.peek())))
+            ret = lexLong(r, ch);
+        else
+            ret = lexSymbol(r, ch);
+        if(ret == NOT_LEXED) {
+            // Back to just after ch, as the caller expects
+            r.resetPosition();
+            r.read();
+        } else
+            r.clearMark();
+        return ret;
+    }
+
+    private static boolean isDigit(int ch) {
+        return ch >= '0' && ch <= '9';
+    }
+
+    /**
+     * Read the rest of a token into the reader's token buffer, returning
+     * false if it has a namespace or is otherwise not a plain name.
+     */
+    private static boolean lexName(SourceReader r, StringBuilder sb) throws IOException {
+        boolean plain = true;
+        for(; ;) {
+            int ch = r.read();
+            if(ch == -1 || isWhitespace(ch) || isTerminatingMacro(ch)) {
+                unread(r, ch);
+                return plain;
+            }
+            if(ch == '/' || ch == ':')
+                plain = false;
+            sb.append((char) ch);
+        }
+    }
+
+    private static Object lexSymbol(SourceReader r, int ch) throws IOException {
+        StringBuilder sb = r.tokenBuffer();
+        sb.append((char) ch);
+        if(ch == '/' || ch == ':' || !lexName(r, sb))
+            return NOT_LEXED;
+        if(sb.length() == 3 && "nil".contentEquals(sb))
+            return null;
+        if(sb.length() == 4 && "true".contentEquals(sb))
+            return Boolean.TRUE;
+        if(sb.length() == 5 && "false".contentEquals(sb))
+            return Boolean.FALSE;
+        return r.internSymbol(sb);
+    }
+
+    private static Object lexKeyword(SourceReader r) throws IOException {
+        StringBuilder sb = r.tokenBuffer();
+        if(!lexName(r, sb) || sb.length() == 0 || isDigit(sb.charAt(0)))
+            return NOT_LEXED;
+        return Keyword.intern(r.internSymbol(sb));
+    }
+
+    /**
+     * Decimal integers that fit in a long without checking for overflow;
+     * octal, hex, radix, bigint, ratio and floating point numbers are left
+     * to LispReader.
+     */
+    private static Object lexLong(SourceReader r, int ch) throws IOException {
+        boolean negative = ch == '-';
+        if(ch == '+' || ch == '-')
+            ch = r.read();
+        int digits = 0;
+        long n = 0;
+        for(; ;) {
+            if(!isDigit(ch))
+                break;
+            if(digits > 0 && n == 0)
+                return NOT_LEXED;
+            n = n * 10 + (ch - '0');
+            digits++;
+            ch = r.read();
+        }
+        if(digits > 18 || !(ch == -1 || isWhitespace(ch) || isTerminatingMacro(ch)))
+            return NOT_LEXED;
+        unread(r, ch);
+        return negative ? -n : n;
+    }
+
+    private static Object lexString(SourceReader r) throws IOException {
+        StringBuilder sb = r.tokenBuffer();
+        for(int ch = r.read(); ch != '"'; ch = r.read()) {
+            if(ch == '\\' || ch == -1)
+                return NOT_LEXED;
+            sb.append((char) ch);
+        }
+        return sb.toString();
+    }
+
     public static class ColonReader extends AFn {
         public Object invoke(Object reader, Object colon) {
             PushbackReader r = (PushbackReader) reader;
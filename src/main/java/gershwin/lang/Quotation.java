@@ -1,13 +1,24 @@
 package gershwin.lang;
 
+import clojure.lang.AFn;
 import clojure.lang.IFn;
+import clojure.lang.Namespace;
 
+import java.util.Collections;
 import java.util.Iterator;
 import java.util.List;
 
-public class Quotation implements IInvocable {
+/**
+ * A quotation as seen at the top level. Quotations are also IFn's, so
+ * Clojure code can invoke them like any other function.
+ */
+public class Quotation extends AFn implements IInvocable {
     private QuotationList quotationForms = null;
+    // The text of quotationForms, kept instead of them when compacting source
+    private byte[] compactSource = null;
     private Object definitionForm = null;
+    // Where quotationForms' symbols resolve, when definitionForm is emitted from them
+    private Namespace definitionNs = null;
     private final IFn definitionFn;
 
     public Quotation(IFn definitionFn) {
@@ -20,17 +31,47 @@ public class Quotation implements IInvocable {
     }
 
     public QuotationList getQuotationForms() {
+        if(this.quotationForms == null && this.compactSource != null)
+            return (QuotationList) CompactSource.forms(this.compactSource).get(0);
         return this.quotationForms;
     }
 
+    /**
+     * When compacting source, only the forms' text is kept, and they're
+     * read back from it whenever they're asked for; see {@link CompactSource}.
+     */
     public void setQuotationForms(QuotationList quotationForms) {
-        this.quotationForms = quotationForms;
+        if(quotationForms != null && Compiler.isCompactingSource()) {
+            this.compactSource = CompactSource.compact(Collections.singletonList(quotationForms));
+            this.quotationForms = null;
+        } else {
+            this.quotationForms = quotationForms;
+        }
     }
 
     public Object getDefinitionForm() {
+        if(this.definitionForm == null && this.definitionNs != null) {
+            QuotationList forms = getQuotationForms();
+            if(forms == null)
+                return null;
+            Object form = Compiler.emitDefinition(this.definitionNs, forms);
+            // Not kept, so the text stays the only copy of the source
+            if(this.compactSource != null)
+                return form;
+            this.definitionForm = form;
+            this.definitionNs = null;
+        }
         return this.definitionForm;
     }
 
+    /**
+     * Have {@link #getDefinitionForm} emit the Clojure source from the
+     * quotation's forms, resolving symbols in ns, the first time it's asked.
+     */
+    void setDefinitionNs(Namespace ns) {
+        this.definitionNs = ns;
+    }
+
     public void setDefinitionForm(Object definitionForm) {
         this.definitionForm = definitionForm;
     }
@@ -39,7 +80,12 @@ public class Quotation implements IInvocable {
         return this.definitionFn;
     }
 
+    /**
+     * Like {@link Word#invoke()}, the definition handles its own stack
+     * effects, so there's nothing left to evaluate afterwards.
+     */
+    @Override
     public Object invoke() {
-        return Compiler.eval(this.definitionFn.invoke());
+        return this.definitionFn.invoke();
     }
 }
@@ -9,7 +9,6 @@ import static clojure.lang.RT.baseLoader;
 
 import java.io.FileNotFoundException;
 import java.io.InputStream;
-import java.io.InputStreamReader;
 import java.io.IOException;
 import java.io.Writer;
 import java.net.URL;
@@ -53,7 +52,7 @@ public class RT {
 	InputStream ins = clojure.lang.RT.resourceAsStream(baseLoader(), name);
 	if(ins != null) {
             try {
-                Compiler.load(new InputStreamReader(ins, UTF8), name, file);
+                Compiler.load(SourceReader.forStream(ins), name, file);
             }
             finally {
                 ins.close();
@@ -164,7 +163,7 @@ public class RT {
         InputStream ins = clojure.lang.RT.resourceAsStream(baseLoader(), gwnfile);
 	if(ins != null) {
             try {
-                Compiler.compile(new InputStreamReader(ins, UTF8), gwnfile,
+                Compiler.compile(SourceReader.forStream(ins), gwnfile,
                                  gwnfile.substring(1 + gwnfile.lastIndexOf("/")));
             }
             finally {
@@ -0,0 +1,93 @@
+package gershwin.lang;
+
+import clojure.lang.IPersistentMap;
+import clojure.lang.Namespace;
+import clojure.lang.Symbol;
+import clojure.lang.Var;
+
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Remembers what Gershwin symbols resolved to in a namespace, so that
+ * analysis doesn't have to build and intern a suffixed {@link Symbol}
+ * every time it sees the same word.
+ *
+ * Entries are keyed by the symbol as read. A cache is thrown away
+ * whenever the namespace's mappings or aliases change, or when a word is
+ * defined in it. Failed lookups are only remembered for unqualified
+ * symbols, since those can only start resolving once the namespace's own
+ * mappings change.
+ *
+ * A qualified symbol names a Var in some other namespace, which can be
+ * unmapped or removed without this one changing, so such a hit is
+ * checked against that namespace before it's used. Caches for removed
+ * namespaces are dropped whenever a cache is made.
+ */
+class ResolutionCache {
+    private static final Object NOT_FOUND = new Object();
+    private static final ConcurrentHashMap<Namespace, ResolutionCache> CACHES =
+        new ConcurrentHashMap<Namespace, ResolutionCache>();
+
+    private final IPersistentMap mappings;
+    private final IPersistentMap aliases;
+    private final ConcurrentHashMap<Symbol, Object> resolved = new ConcurrentHashMap<Symbol, Object>();
+
+    private ResolutionCache(Namespace ns) {
+        this.mappings = ns.getMappings();
+        this.aliases = ns.getAliases();
+    }
+
+    private boolean isCurrent(Namespace ns) {
+        return ns.getMappings() == this.mappings && ns.getAliases() == this.aliases;
+    }
+
+    /**
+     * Same as resolving form with {@link RT#GERSHWIN_SUFFIX} appended in
+     * ns, but cached.
+     */
+    static Object maybeResolve(Namespace ns, Symbol form) {
+        ResolutionCache cache = CACHES.get(ns);
+        if(cache == null || !cache.isCurrent(ns)) {
+            removeStale();
+            cache = new ResolutionCache(ns);
+            CACHES.put(ns, cache);
+        }
+        Object ret = cache.resolved.get(form);
+        if(ret == NOT_FOUND)
+            return null;
+        if(ret != null && (form.getNamespace() == null || isInterned(ret)))
+            return ret;
+        ret = clojure.lang.Compiler.maybeResolveIn(ns, Symbol.intern(form.toString() + RT.GERSHWIN_SUFFIX));
+        if(ret != null)
+            cache.resolved.put(form, ret);
+        else if(form.getNamespace() == null)
+            cache.resolved.put(form, NOT_FOUND);
+        else
+            cache.resolved.remove(form);
+        return ret;
+    }
+
+    static void invalidate(Namespace ns) {
+        CACHES.remove(ns);
+    }
+
+    /**
+     * Whether x is still the Var of its name in a namespace that hasn't
+     * been removed.
+     */
+    private static boolean isInterned(Object x) {
+        if(!(x instanceof Var))
+            return true;
+        Var var = (Var) x;
+        return Namespace.find(var.ns.getName()) == var.ns && var.ns.findInternedVar(var.sym) == var;
+    }
+
+    private static void removeStale() {
+        for(Iterator<Namespace> i = CACHES.keySet().iterator(); i.hasNext();) {
+            Namespace ns = i.next();
+            if(Namespace.find(ns.getName()) != ns)
+                i.remove();
+        }
+    }
+}
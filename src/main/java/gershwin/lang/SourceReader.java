@@ -0,0 +1,411 @@
+package gershwin.lang;
+
+import clojure.lang.Symbol;
+
+import java.io.CharArrayReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.util.Arrays;
+
+/**
+ * A {@link LineNumberingPushbackReader} for reading whole source files.
+ *
+ * Characters are read a block at a time into a char[] and handed out
+ * without the locking and double buffering of a {@link java.io.PushbackReader}
+ * over a {@link java.io.LineNumberReader}, which lets the {@link Parser}
+ * lex Gershwin tokens itself. Like {@link java.io.LineNumberReader}, CR
+ * and CRLF are both read as a single '\n'.
+ *
+ * Not for interactive use: a block read waits for more than one line.
+ *
+ * Files and resources are better read with {@link #forFile} and
+ * {@link #forStream}, which decode the whole source up front. Lines and
+ * columns are then worked out from a table of line offsets when asked
+ * for, rather than counted character by character.
+ */
+public class SourceReader extends LineNumberingPushbackReader {
+    static final int DEFAULT_BUFFER_SIZE = 8192;
+
+    // Characters kept ahead of pos when the buffer is refilled, so there
+    // is always room to unread as much as a PushbackReader of size 2.
+    private static final int PUSHBACK = 2;
+
+    private final Reader source;
+    private char[] buf;
+    private int pos = 0;
+    private int limit = 0;
+    private boolean eof = false;
+
+    // For a whole decoded source, the offset at which each line starts;
+    // null when reading a block at a time.
+    private int[] lineStarts;
+    private int lineCount;
+    private int firstLine = 1;
+
+    private int line = 1;
+    private int column = 1;
+    private boolean atLineStart = true;
+    private boolean prevAtLineStart;
+    private int prevColumn;
+
+    // Set by markPosition, so a token can be re-read from its start
+    private int mark = -1;
+    private int markLine;
+    private int markColumn;
+    private boolean markAtLineStart;
+
+    private final StringBuilder token = new StringBuilder();
+    private Symbol[] symbols = new Symbol[256];
+    private int symbolCount = 0;
+
+    public SourceReader(Reader r) {
+        this(r, DEFAULT_BUFFER_SIZE);
+    }
+
+    public SourceReader(Reader r, int size) {
+        // The superclass' own buffers go unused.
+        super(r, 1);
+        this.source = r;
+        this.buf = new char[Math.max(size, 2 * PUSHBACK)];
+    }
+
+    /**
+     * Read the whole of chars[0..length), which is modified in place.
+     */
+    SourceReader(char[] chars, int length) {
+        this(chars, length, 1);
+    }
+
+    /**
+     * As above, for text starting at the given line of some larger source.
+     */
+    SourceReader(char[] chars, int length, int firstLine) {
+        super(new CharArrayReader(chars, 0, length), 1);
+        this.source = null;
+        this.buf = chars;
+        this.limit = indexLines(chars, length);
+        this.eof = true;
+        this.firstLine = firstLine;
+    }
+
+    /**
+     * A reader over the whole of the given UTF-8 file, which must fit in
+     * an array.
+     */
+    public static SourceReader forFile(File file) throws IOException {
+        FileInputStream f = new FileInputStream(file);
+        try {
+            FileChannel ch = f.getChannel();
+            long size = ch.size();
+            if(size > Integer.MAX_VALUE)
+                throw Util.runtimeException("Source file too large to read: " + file + " (" + size + " bytes)");
+            ByteBuffer bytes = ByteBuffer.allocate((int) size);
+            while(bytes.hasRemaining()) {
+                if(ch.read(bytes) < 0)
+                    break;
+            }
+            bytes.flip();
+            return decode(bytes);
+        } finally {
+            f.close();
+        }
+    }
+
+    /**
+     * A reader over everything left in the given UTF-8 stream, which is
+     * not closed.
+     */
+    public static SourceReader forStream(InputStream in) throws IOException {
+        byte[] bytes = new byte[Math.max(in.available(), DEFAULT_BUFFER_SIZE)];
+        int len = 0;
+        for(int n = in.read(bytes, 0, bytes.length); n != -1; n = in.read(bytes, len, bytes.length - len)) {
+            len += n;
+            if(len == bytes.length)
+                bytes = Arrays.copyOf(bytes, bytes.length * 2);
+        }
+        return decode(ByteBuffer.wrap(bytes, 0, len));
+    }
+
+    /**
+     * Decode in one go, replacing malformed input as InputStreamReader does.
+     */
+    static SourceReader decode(ByteBuffer bytes) throws IOException {
+        CharsetDecoder decoder = RT.UTF8.newDecoder()
+            .onMalformedInput(CodingErrorAction.REPLACE)
+            .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        CharBuffer chars = decoder.decode(bytes);
+        if(chars.hasArray() && chars.arrayOffset() == 0 && chars.position() == 0)
+            return new SourceReader(chars.array(), chars.limit());
+        char[] copy = new char[chars.remaining()];
+        chars.get(copy);
+        return new SourceReader(copy, copy.length);
+    }
+
+    /**
+     * Turn CR and CRLF into '\n', noting where each line starts, and
+     * return the new length.
+     */
+    private int indexLines(char[] chars, int length) {
+        lineStarts = new int[Math.max(16, length / 32)];
+        lineStarts[0] = 0;
+        lineCount = 1;
+        int out = 0;
+        for(int i = 0; i < length; i++) {
+            char c = chars[i];
+            if(c == '\r') {
+                if(i + 1 < length && chars[i + 1] == '\n')
+                    i++;
+                c = '\n';
+            }
+            chars[out++] = c;
+            if(c == '\n') {
+                if(lineCount == lineStarts.length)
+                    lineStarts = Arrays.copyOf(lineStarts, lineCount * 2);
+                lineStarts[lineCount++] = out;
+            }
+        }
+        return out;
+    }
+
+    /**
+     * The 0-based line that the character at pos is on.
+     */
+    private int lineAt(int pos) {
+        int i = Arrays.binarySearch(lineStarts, 0, lineCount, pos);
+        return i >= 0 ? i : -i - 2;
+    }
+
+    public int getBufferSize() {
+        return buf.length;
+    }
+
+    public int getLineNumber() {
+        if(lineStarts != null)
+            return lineAt(pos) + firstLine;
+        return line;
+    }
+
+    public int getColumnNumber() {
+        if(lineStarts != null)
+            return pos - lineStarts[lineAt(pos)] + 1;
+        return column;
+    }
+
+    public boolean atLineStart() {
+        if(lineStarts != null)
+            return pos == 0 || pos == limit || buf[pos - 1] == '\n';
+        return atLineStart;
+    }
+
+    public int read() throws IOException {
+        if(lineStarts != null)
+            return pos < limit ? buf[pos++] : -1;
+        prevAtLineStart = atLineStart;
+        prevColumn = column;
+        if(pos >= limit && !fill()) {
+            atLineStart = true;
+            return -1;
+        }
+        int c = buf[pos++];
+        if(c == '\r') {
+            if((pos < limit || fill()) && buf[pos] == '\n')
+                pos++;
+            c = '\n';
+        }
+        if(c == '\n') {
+            line++;
+            atLineStart = true;
+            column = 1;
+        } else {
+            atLineStart = false;
+            column++;
+        }
+        return c;
+    }
+
+    public int read(char[] cbuf, int off, int len) throws IOException {
+        int n = 0;
+        while(n < len) {
+            int c = read();
+            if(c == -1)
+                return n == 0 ? -1 : n;
+            cbuf[off + n++] = (char) c;
+        }
+        return n;
+    }
+
+    public void unread(int c) throws IOException {
+        if(pos == 0)
+            throw new IOException("Pushback buffer overflow");
+        buf[--pos] = (char) c;
+        if(lineStarts != null)
+            return;
+        if(c == '\n') {
+            line--;
+            atLineStart = prevAtLineStart;
+            column = prevColumn;
+        } else {
+            column--;
+            atLineStart = column == 1;
+        }
+    }
+
+    public void unread(char[] cbuf, int off, int len) throws IOException {
+        for(int i = off + len - 1; i >= off; i--)
+            unread(cbuf[i]);
+    }
+
+    public String readLine() throws IOException {
+        int c = read();
+        if(c == -1)
+            return null;
+        StringBuilder sb = new StringBuilder();
+        while(c != '\n' && c != -1) {
+            sb.append((char) c);
+            c = read();
+        }
+        return sb.toString();
+    }
+
+    public long skip(long n) throws IOException {
+        long skipped = 0;
+        while(skipped < n && read() != -1)
+            skipped++;
+        return skipped;
+    }
+
+    public boolean ready() throws IOException {
+        return pos < limit || (source != null && source.ready());
+    }
+
+    /**
+     * The next character, as {@link #read} would return it, without
+     * consuming it.
+     */
+    int peek() throws IOException {
+        if(pos >= limit && !fill())
+            return -1;
+        return buf[pos] == '\r' ? '\n' : buf[pos];
+    }
+
+    /**
+     * Remember the current position, keeping everything read from here
+     * on in the buffer until {@link #resetPosition} or {@link #clearMark}.
+     */
+    void markPosition() {
+        mark = pos;
+        markLine = line;
+        markColumn = column;
+        markAtLineStart = atLineStart;
+    }
+
+    /**
+     * Go back to where {@link #markPosition} was called.
+     */
+    void resetPosition() {
+        pos = mark;
+        line = markLine;
+        column = markColumn;
+        atLineStart = markAtLineStart;
+        mark = -1;
+    }
+
+    void clearMark() {
+        mark = -1;
+    }
+
+    /**
+     * A scratch buffer for the token being lexed.
+     */
+    StringBuilder tokenBuffer() {
+        token.setLength(0);
+        return token;
+    }
+
+    /**
+     * The unqualified symbol with the given name. Symbols read from one
+     * source are shared, and found without first building a String.
+     */
+    Symbol internSymbol(CharSequence name) {
+        int len = name.length();
+        int h = 0;
+        for(int i = 0; i < len; i++)
+            h = 31 * h + name.charAt(i);
+        int mask = symbols.length - 1;
+        for(int i = (h ^ (h >>> 16)) & mask; ; i = (i + 1) & mask) {
+            Symbol sym = symbols[i];
+            if(sym == null) {
+                sym = Symbol.intern(null, name.toString());
+                symbols[i] = sym;
+                if(++symbolCount * 4 > symbols.length * 3)
+                    rehash();
+                return sym;
+            }
+            if(sameName(sym.getName(), name))
+                return sym;
+        }
+    }
+
+    private static boolean sameName(String s, CharSequence name) {
+        int len = s.length();
+        if(len != name.length())
+            return false;
+        for(int i = 0; i < len; i++) {
+            if(s.charAt(i) != name.charAt(i))
+                return false;
+        }
+        return true;
+    }
+
+    private void rehash() {
+        Symbol[] old = symbols;
+        symbols = new Symbol[old.length * 2];
+        int mask = symbols.length - 1;
+        for(Symbol sym : old) {
+            if(sym != null) {
+                int h = sym.getName().hashCode();
+                int i = (h ^ (h >>> 16)) & mask;
+                while(symbols[i] != null)
+                    i = (i + 1) & mask;
+                symbols[i] = sym;
+            }
+        }
+    }
+
+    /**
+     * Read the next block from the source, first dropping whatever is no
+     * longer needed from the front of the buffer.
+     */
+    private boolean fill() throws IOException {
+        if(eof)
+            return false;
+        int keep = mark >= 0 ? mark : Math.max(0, pos - PUSHBACK);
+        if(keep > 0) {
+            System.arraycopy(buf, keep, buf, 0, limit - keep);
+            limit -= keep;
+            pos -= keep;
+            if(mark >= 0)
+                mark -= keep;
+        }
+        if(limit == buf.length)
+            buf = Arrays.copyOf(buf, buf.length * 2);
+        int n;
+        do {
+            n = source.read(buf, limit, buf.length - limit);
+        } while(n == 0);
+        if(n < 0) {
+            eof = true;
+            return false;
+        }
+        limit += n;
+        return true;
+    }
+}
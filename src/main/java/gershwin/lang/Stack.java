@@ -1,68 +1,96 @@
 package gershwin.lang;
 
-import clojure.lang.Atom;
-import clojure.lang.IFn;
 import clojure.lang.ISeq;
 import clojure.lang.IPersistentStack;
 import clojure.lang.PersistentVector;
 
 /**
- * Internally, the stack is a Clojure vector held inside an Atom. Normal
- * method names treat the stack as a persistent data structure, dereferencing
- * the Atom as needed. Method names suffixed with "Mutable" denote mutable versions
- * that affect the state of the Atom holding the stack.
+ * Static entry point to the data stack. Every call resolves against the
+ * data stack of the calling thread's {@link ExecutionContext}, so the
+ * data stack is mutable but never shared between threads.
+ *
+ * Method names suffixed with "It" or "Mutable" change the data stack.
+ * Plain {@code conj} and {@code pop} follow the Clojure idiom instead
+ * and return a new persistent stack built from a {@link #snapshot()},
+ * leaving the data stack untouched.
  */
 public class Stack {
-    private static Atom stackAtom = new Atom(PersistentVector.EMPTY);
-    private static IFn CLOJURE_CONJ = ClojureApi.var("clojure.core", "conj");
-    private static IFn CLOJURE_POP = ClojureApi.var("clojure.core", "pop");
-    private static String STACK_UNDERFLOW_MSG = "Data stack underflow. Can't take something off an empty data stack.";
+    static final String STACK_UNDERFLOW_MSG = "Data stack underflow. Can't take something off an empty data stack.";
+
+    public static IDataStack getDataStack() {
+        return ExecutionContext.current().getDataStack();
+    }
 
     public static IPersistentStack conj(Object form) {
-        return (IPersistentStack) CLOJURE_CONJ.invoke(stackAtom.deref(), form);
+        return snapshot().cons(form);
     }
 
     public static IPersistentStack conjMutable(Object form) {
-        stackAtom.swap(CLOJURE_CONJ, form);
-        return (IPersistentStack) stackAtom.deref();
+        getDataStack().push(form);
+        return snapshot();
+    }
+
+    /**
+     * Put the item on TOS, no questions asked.
+     */
+    public static void push(Object form) {
+        getDataStack().push(form);
+    }
+
+    /**
+     * Put the value of a form on TOS, unless it's the special value
+     * :gershwin.core/stack-void. Keywords are interned, so an
+     * identity check is all it takes.
+     */
+    public static void pushResult(Object form) {
+        if(form != RT.STACK_VOID) {
+            getDataStack().push(form);
+        }
     }
 
     /**
      * Custom mutable conj, never conjes the special value
-     * :gershwin.core/stack-void
+     * :gershwin.core/stack-void. Returns a {@link #snapshot()} of the
+     * data stack afterwards, so it takes time proportional to the depth
+     * of the stack.
+     *
+     * @deprecated use {@link #pushResult}, which doesn't copy the stack
      */
+    @Deprecated
     public static IPersistentStack conjIt(Object form) {
-        if(form == null
-           || !(form.equals(RT.STACK_VOID))) {
-            stackAtom.swap(CLOJURE_CONJ, form);
-        }
-        return (IPersistentStack) stackAtom.deref();
+        pushResult(form);
+        return snapshot();
     }
 
     /**
      * Like Clojure's peek, but throws an exception if the stack is empty.
      */
     public static Object peek() {
-        IPersistentStack rawStack = (IPersistentStack) stackAtom.deref();
-        if (rawStack.count() == 0)
-            throw new StackUnderflowException(STACK_UNDERFLOW_MSG);
-        return rawStack.peek();
+        return getDataStack().peek();
     }
 
+    /**
+     * Like {@link #peek()}, but for the item {@code depth} places below TOS.
+     */
+    public static Object peekAt(int depth) {
+        return getDataStack().peekAt(depth);
+    }
+
+    /**
+     * The data stack without its TOS, as a new persistent stack. The
+     * data stack itself is untouched, so this copies all of it and takes
+     * time proportional to its depth; {@link #popIt} doesn't.
+     */
     public static IPersistentStack pop() {
-        try {
-            return (IPersistentStack) CLOJURE_POP.invoke(stackAtom.deref());
-        } catch(IllegalStateException e) {
-            throw new StackUnderflowException(STACK_UNDERFLOW_MSG, e);
-        }
+        PersistentVector v = snapshot();
+        if(v.count() == 0)
+            throw new StackUnderflowException(STACK_UNDERFLOW_MSG);
+        return v.pop();
     }
 
     public static IPersistentStack popMutable() {
-        try {
-            return (IPersistentStack) stackAtom.swap(CLOJURE_POP);
-        } catch(IllegalStateException e) {
-            throw new StackUnderflowException(STACK_UNDERFLOW_MSG);
-        }
+        getDataStack().pop();
+        return snapshot();
     }
 
     /**
@@ -72,32 +100,31 @@ public class Stack {
      * of the item popped.
      */
     public static Object popIt() {
-        IPersistentStack rawStack = (IPersistentStack) stackAtom.deref();
-        Object item = rawStack.peek();
-        try {
-            // Try again if, between the above peek and the change to the atom,
-            // the underlying value has changed.
-            if(!stackAtom.compareAndSet(rawStack, rawStack.pop())) {
-                return popIt();
-            }
-        } catch(IllegalStateException e) {
-            throw new StackUnderflowException(STACK_UNDERFLOW_MSG);
-        }
-        return item;
+        return getDataStack().pop();
     }
 
+    /**
+     * Empty the data stack, returning the now empty stack.
+     */
     public static IPersistentStack clear() {
-        return (IPersistentStack) stackAtom.reset(PersistentVector.EMPTY);
+        getDataStack().clear();
+        return PersistentVector.EMPTY;
     }
 
     public static int count() {
-        IPersistentStack rawStack = (IPersistentStack) stackAtom.deref();
-        return rawStack.count();
+        return getDataStack().count();
     }
 
     public static ISeq seq() {
-        IPersistentStack rawStack = (IPersistentStack) stackAtom.deref();
-        return rawStack.seq();
+        return snapshot().seq();
+    }
+
+    /**
+     * Persistent copy of the data stack, for when a value is needed that
+     * won't change out from under you (e.g., printing at the REPL).
+     */
+    public static PersistentVector snapshot() {
+        return getDataStack().snapshot();
     }
 
     public static class StackUnderflowException extends IllegalStateException {
@@ -0,0 +1,178 @@
+package gershwin.lang;
+
+import clojure.lang.IPersistentMap;
+import clojure.lang.IPersistentVector;
+import clojure.lang.ISeq;
+import clojure.lang.Keyword;
+import clojure.lang.Symbol;
+import clojure.lang.Var;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A stack effect the compiler can reason about, like {@code [x y -- y x]}.
+ *
+ * Only "closed" declarations are parsed: a vector of plain symbols with a
+ * single {@code --}. Anything else, such as row variables ({@code ..a}),
+ * nested effects or a missing separator, means the effect isn't known
+ * statically and {@link #parse} returns null.
+ */
+public class StackEffect {
+    static final Symbol SEPARATOR = Symbol.intern("--");
+    static final Keyword STACK_EFFECT_KEY = Keyword.intern(null, "stack-effect");
+    static final Keyword SHUFFLE_KEY = Keyword.intern(null, "shuffle");
+    static final Keyword CHECKED_KEY = Keyword.intern(null, "stack-effect-checked");
+    static final Keyword INTRINSIC_KEY = Keyword.intern(null, "intrinsic");
+    static final Symbol QUOTE = Symbol.intern("quote");
+
+    private final List<Symbol> inputs;
+    private final List<Symbol> outputs;
+
+    StackEffect(List<Symbol> inputs, List<Symbol> outputs) {
+        this.inputs = Collections.unmodifiableList(inputs);
+        this.outputs = Collections.unmodifiableList(outputs);
+    }
+
+    /**
+     * An effect with anonymous items, as worked out by the compiler.
+     */
+    static StackEffect ofCounts(int inputCount, int outputCount) {
+        List<Symbol> ins = new ArrayList<Symbol>(inputCount);
+        for(int i = 0; i < inputCount; i++)
+            ins.add(Symbol.intern("x" + (i + 1)));
+        List<Symbol> outs = new ArrayList<Symbol>(outputCount);
+        for(int i = 0; i < outputCount; i++)
+            outs.add(Symbol.intern("y" + (i + 1)));
+        return new StackEffect(ins, outs);
+    }
+
+    /**
+     * @param form  a declared stack effect; either the vector itself
+     *              or the {@code (quote [...])} stored as Var metadata
+     * @return      the effect, or null if it isn't closed
+     */
+    public static StackEffect parse(Object form) {
+        if(form instanceof ISeq && QUOTE.equals(((ISeq) form).first()))
+            form = clojure.lang.RT.second(form);
+        if(!(form instanceof IPersistentVector))
+            return null;
+        IPersistentVector v = (IPersistentVector) form;
+        List<Symbol> ins = new ArrayList<Symbol>();
+        List<Symbol> outs = null;
+        for(int i = 0; i < v.count(); i++) {
+            Object item = v.nth(i);
+            if(!(item instanceof Symbol))
+                return null;
+            Symbol sym = (Symbol) item;
+            if(SEPARATOR.equals(sym)) {
+                if(outs != null)
+                    return null;
+                outs = new ArrayList<Symbol>();
+            } else if(sym.getNamespace() != null
+                      || sym.getName().startsWith("..")
+                      || sym.getName().startsWith("<")) {
+                return null;
+            } else if(outs == null) {
+                ins.add(sym);
+            } else {
+                outs.add(sym);
+            }
+        }
+        if(outs == null)
+            return null;
+        return new StackEffect(ins, outs);
+    }
+
+    /**
+     * The closed stack effect of a word, taken from its Var's metadata,
+     * or null if there isn't one.
+     */
+    public static StackEffect forWord(Var var) {
+        IPersistentMap meta = var.meta();
+        if(meta == null)
+            return null;
+        Object root = var.hasRoot() ? var.getRawRoot() : null;
+        if(root instanceof Word && ((Word) root).getStackEffect() != null)
+            return parse(((Word) root).getStackEffect());
+        return parse(meta.valAt(STACK_EFFECT_KEY));
+    }
+
+    /**
+     * Words marked {@code :shuffle} only rearrange the items named in their
+     * stack effect, so the compiler may move values around itself instead
+     * of calling them. Returns null for anything else.
+     */
+    public static StackEffect forShuffleWord(Var var) {
+        IPersistentMap meta = var.meta();
+        if(meta == null || var.isDynamic() || !clojure.lang.RT.booleanCast(meta.valAt(SHUFFLE_KEY)))
+            return null;
+        StackEffect effect = forWord(var);
+        return effect != null && effect.isShuffle() ? effect : null;
+    }
+
+    /**
+     * The effect of a word that is known to have exactly that effect
+     * whatever it's given: shuffle and intrinsic words, and words whose
+     * definition the compiler checked against their declaration. Other
+     * words may invoke a quotation they're given, which has whatever
+     * effect the quotation has, so for them this returns null.
+     *
+     * A word defined lazily is compiled first, to find out whether its
+     * definition checks.
+     */
+    public static StackEffect forCheckedWord(Var var) {
+        if(var.isDynamic())
+            return null;
+        Object root = var.hasRoot() ? var.getRawRoot() : null;
+        if(root instanceof LazySourceWord)
+            ((LazySourceWord) root).getDefinitionFn();
+        IPersistentMap meta = var.meta();
+        if(meta == null)
+            return null;
+        if(clojure.lang.RT.booleanCast(meta.valAt(CHECKED_KEY)) || meta.valAt(INTRINSIC_KEY) != null)
+            return forWord(var);
+        return forShuffleWord(var);
+    }
+
+    public int getInputCount() {
+        return inputs.size();
+    }
+
+    public int getOutputCount() {
+        return outputs.size();
+    }
+
+    /**
+     * True if every output names an input.
+     */
+    public boolean isShuffle() {
+        for(Symbol out : outputs) {
+            if(!inputs.contains(out))
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * For a shuffle, the position among the inputs (0 being the deepest)
+     * that each output is a copy of.
+     */
+    public int[] shuffleIndexes() {
+        int[] ret = new int[outputs.size()];
+        for(int i = 0; i < ret.length; i++)
+            ret[i] = inputs.lastIndexOf(outputs.get(i));
+        return ret;
+    }
+
+    public String toString() {
+        StringBuilder sb = new StringBuilder("[");
+        for(Symbol in : inputs)
+            sb.append(in).append(' ');
+        sb.append(SEPARATOR);
+        for(Symbol out : outputs)
+            sb.append(' ').append(out);
+        return sb.append(']').toString();
+    }
+}
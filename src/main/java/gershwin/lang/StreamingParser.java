@@ -0,0 +1,306 @@
+package gershwin.lang;
+
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A push-based reader for Gershwin source that arrives in pieces, e.g.
+ * from a socket read without blocking.
+ *
+ * Each call to {@link #feed} takes the next chunk of input and returns
+ * the top-level forms it completed, keeping any partial form for the
+ * next call. Only the extent of each form is worked out incrementally,
+ * by following nesting, strings and comments; complete forms are then
+ * read by the {@link Parser} as usual.
+ *
+ * Not thread-safe; use one per input stream.
+ */
+public class StreamingParser {
+    private static final Object EOF = new Object();
+
+    // Scanner modes
+    private static final int FORM_START = 0;
+    private static final int TOKEN = 1;
+    private static final int STRING = 2;
+    private static final int STRING_ESCAPE = 3;
+    private static final int COMMENT = 4;
+
+    // Marks a context as being read by the Parser, rather than LispReader.
+    private static final int GERSHWIN = 0x10000;
+
+    private final CharsetDecoder decoder;
+    private ByteBuffer undecoded;
+
+    private final StringBuilder text = new StringBuilder();
+    private int scanPos = 0;
+    private int mode = FORM_START;
+    private int[] contexts = new int[16];
+    private int depth = 0;
+    // Forms still needed before the current top-level one is complete,
+    // e.g. after a quote or metadata
+    private int owed = 0;
+    // End of the last complete top-level form
+    private int boundary = 0;
+    private int linesConsumed = 0;
+    private boolean finished = false;
+
+    public StreamingParser() {
+        this.decoder = RT.UTF8.newDecoder()
+            .onMalformedInput(CodingErrorAction.REPLACE)
+            .onUnmappableCharacter(CodingErrorAction.REPLACE);
+    }
+
+    /**
+     * Add the chars and return the top-level forms this completes.
+     */
+    public List<Object> feed(CharSequence chars) {
+        if(finished)
+            throw Util.runtimeException("Can't feed a StreamingParser after finish()");
+        text.append(chars);
+        scan();
+        return readComplete(boundary);
+    }
+
+    /**
+     * Add the UTF-8 bytes and return the top-level forms this completes.
+     * A character split across chunks is decoded once the rest arrives.
+     */
+    public List<Object> feed(ByteBuffer bytes) {
+        return feed(decode(bytes, false));
+    }
+
+    /**
+     * Signal the end of input, returning any forms still to be read.
+     * Throws, as the Parser does, if the input ends in the middle of one.
+     */
+    public List<Object> finish() {
+        if(finished)
+            return Collections.emptyList();
+        CharBuffer rest = decode(ByteBuffer.allocate(0), true);
+        text.append(rest);
+        finished = true;
+        return readComplete(text.length());
+    }
+
+    /**
+     * True if some input has been fed that isn't yet part of a complete form.
+     */
+    public boolean hasPartialForm() {
+        for(int i = 0; i < text.length(); i++) {
+            if(!Parser.isWhitespace(text.charAt(i)))
+                return true;
+        }
+        return undecoded != null && undecoded.hasRemaining();
+    }
+
+    private CharBuffer decode(ByteBuffer bytes, boolean endOfInput) {
+        if(undecoded != null && undecoded.hasRemaining()) {
+            ByteBuffer joined = ByteBuffer.allocate(undecoded.remaining() + bytes.remaining());
+            joined.put(undecoded).put(bytes);
+            joined.flip();
+            bytes = joined;
+        }
+        CharBuffer chars = CharBuffer.allocate((int) (bytes.remaining() * decoder.maxCharsPerByte()) + 2);
+        decoder.decode(bytes, chars, endOfInput);
+        if(endOfInput) {
+            decoder.flush(chars);
+            decoder.reset();
+        }
+        if(bytes.hasRemaining()) {
+            undecoded = ByteBuffer.allocate(bytes.remaining());
+            undecoded.put(bytes);
+            undecoded.flip();
+        } else {
+            undecoded = null;
+        }
+        chars.flip();
+        return chars;
+    }
+
+    /**
+     * Read the forms in text[0..end), then drop that text.
+     */
+    private List<Object> readComplete(int end) {
+        if(end == 0)
+            return Collections.emptyList();
+        char[] chars = new char[end];
+        text.getChars(0, end, chars, 0);
+        int firstLine = linesConsumed + 1;
+        text.delete(0, end);
+        scanPos -= end;
+        boundary = 0;
+        for(int i = 0; i < end; i++) {
+            if(chars[i] == '\n' || (chars[i] == '\r' && (i + 1 == end || chars[i + 1] != '\n')))
+                linesConsumed++;
+        }
+        List<Object> forms = new ArrayList<Object>();
+        SourceReader r = new SourceReader(chars, end, firstLine);
+        for(Object form = Parser.read(r, false, EOF, false);
+            form != EOF;
+            form = Parser.read(r, false, EOF, false)) {
+            forms.add(form);
+        }
+        return forms;
+    }
+
+    /**
+     * Carry on following the structure of the text, noting where the last
+     * complete top-level form ends.
+     */
+    private void scan() {
+        int len = text.length();
+        while(scanPos < len) {
+            char c = text.charAt(scanPos);
+            switch(mode) {
+            case COMMENT:
+                if(c == '\n' || c == '\r')
+                    mode = FORM_START;
+                scanPos++;
+                continue;
+            case STRING:
+                if(c == '\\')
+                    mode = STRING_ESCAPE;
+                else if(c == '"')
+                    endForm(scanPos + 1);
+                scanPos++;
+                continue;
+            case STRING_ESCAPE:
+                mode = STRING;
+                scanPos++;
+                continue;
+            case TOKEN:
+                if(Parser.isWhitespace(c) || Parser.isTerminatingMacro(c))
+                    endForm(scanPos);
+                else
+                    scanPos++;
+                continue;
+            default:
+                break;
+            }
+
+            if(Parser.isWhitespace(c)) {
+                scanPos++;
+                continue;
+            }
+            int top = depth > 0 ? contexts[depth - 1] : GERSHWIN;
+            boolean gershwin = (top & GERSHWIN) != 0;
+            // Some characters mean different things depending on the next one
+            if(scanPos + 1 == len && (c == '\\' || c == '#' || (gershwin && (c == ':' || c == '<'))))
+                return;
+            int next = scanPos + 1 < len ? text.charAt(scanPos + 1) : -1;
+
+            if(depth > 0 && c == (char) top) {
+                depth--;
+                scanPos++;
+                endForm(scanPos);
+            } else if(c == ')' || c == ']' || c == '}') {
+                // Unmatched; left for the Parser to complain about
+                scanPos++;
+                endForm(scanPos);
+            } else if(gershwin && c == '!') {
+                mode = COMMENT;
+                scanPos++;
+            } else if(c == ';') {
+                mode = COMMENT;
+                scanPos++;
+            } else if(gershwin && c == ':' && Parser.isWhitespace(next)) {
+                push(';' | GERSHWIN);
+                scanPos++;
+            } else if(gershwin && c == '<' && Parser.isWhitespace(next)) {
+                push('>' | GERSHWIN);
+                scanPos++;
+            } else if(c == '[' || c == '{') {
+                push((c == '[' ? ']' : '}') | (top & GERSHWIN));
+                scanPos++;
+            } else if(c == '(') {
+                push(')');
+                scanPos++;
+            } else if(c == '"') {
+                mode = STRING;
+                scanPos++;
+            } else if(c == '\\') {
+                // Character literal; the next character is part of it, whatever it is
+                mode = TOKEN;
+                scanPos += 2;
+            } else if(c == '\'' || c == '`' || c == '~' || c == '@') {
+                prefix(1);
+                scanPos++;
+            } else if(c == '^') {
+                prefix(2);
+                scanPos++;
+            } else if(c == '#') {
+                dispatch(next);
+            } else {
+                mode = TOKEN;
+                scanPos++;
+            }
+        }
+    }
+
+    private void dispatch(int next) {
+        switch(next) {
+        case '{':
+            push('}');
+            scanPos += 2;
+            break;
+        case '(':
+            push(')');
+            scanPos += 2;
+            break;
+        case '"':
+            mode = STRING;
+            scanPos += 2;
+            break;
+        case '!':
+            mode = COMMENT;
+            scanPos += 2;
+            break;
+        case '_':
+        case '\'':
+        case '=':
+            prefix(1);
+            scanPos += 2;
+            break;
+        case '^':
+            prefix(2);
+            scanPos += 2;
+            break;
+        default:
+            // A tagged literal; the tag and then the form
+            prefix(2);
+            scanPos++;
+            break;
+        }
+    }
+
+    private void push(int context) {
+        if(depth == contexts.length) {
+            int[] grown = new int[depth * 2];
+            System.arraycopy(contexts, 0, grown, 0, depth);
+            contexts = grown;
+        }
+        contexts[depth++] = context;
+    }
+
+    /**
+     * A reader macro that applies to the next count forms.
+     */
+    private void prefix(int count) {
+        if(depth == 0)
+            owed = Math.max(owed - 1, 0) + count;
+    }
+
+    private void endForm(int end) {
+        mode = FORM_START;
+        if(depth == 0) {
+            owed = Math.max(owed - 1, 0);
+            if(owed == 0)
+                boundary = end;
+        }
+    }
+}
@@ -7,8 +7,10 @@ import clojure.lang.ISeq;
 import clojure.lang.IPersistentCollection;
 import clojure.lang.IPersistentList;
 import clojure.lang.IPersistentMap;
+import clojure.lang.Namespace;
 
 import java.util.Iterator;
+import java.util.List;
 
 /**
  * Class representing a word definition in Gershwin.
@@ -23,6 +25,17 @@ public class Word extends AFn {
     private final IPersistentCollection stackEffect;
     private final IFn definitionFn;
     private Object definitionForm;
+    // Body as read, from which definitionForm is emitted when first needed,
+    // or its text when compacting source
+    private List definitionSource;
+    private byte[] compactSource;
+    private Namespace definitionNs;
+    // Analyzed body, kept for words marked :inline
+    private List inlineBody;
+    // Or, for such words loaded from class files, their source
+    private String inlineSource;
+    private Namespace inlineNs;
+    private boolean effectChecked;
     // private final IPersistentMap _meta;
 
     public IPersistentCollection getStackEffect() {
@@ -34,13 +47,77 @@ public class Word extends AFn {
     }
 
     public Object getDefinitionForm() {
-        return this.definitionForm;
+        if(this.definitionForm != null)
+            return this.definitionForm;
+        List source = this.definitionSource;
+        if(source != null) {
+            this.definitionForm = Compiler.emitDefinition(this.definitionNs, source);
+            this.definitionSource = null;
+            this.definitionNs = null;
+            return this.definitionForm;
+        }
+        // Not kept, so the text stays the only copy of the source
+        if(this.compactSource != null)
+            return Compiler.emitDefinition(this.definitionNs, CompactSource.forms(this.compactSource));
+        return null;
+    }
+
+    /**
+     * The body as read, from which {@link #getDefinitionForm} emits the
+     * Clojure source, resolving symbols in ns, the first time it's asked.
+     * When compacting source, only the body's text is kept; see
+     * {@link CompactSource}.
+     */
+    void setDefinitionSource(Namespace ns, List rawForms) {
+        this.definitionNs = ns;
+        if(Compiler.isCompactingSource())
+            this.compactSource = CompactSource.compact(rawForms);
+        else
+            this.definitionSource = rawForms;
     }
 
     public void setDefinitionForm(Object definitionForm) {
         this.definitionForm = definitionForm;
     }
 
+    /**
+     * The analyzed exprs of the word's body, if the compiler may expand
+     * the word where it's used instead of calling it; otherwise null.
+     */
+    List getInlineBody() {
+        if(this.inlineBody == null && this.inlineSource != null) {
+            this.inlineBody = Compiler.analyzeInlineSource(this.inlineNs, this.inlineSource);
+            this.inlineSource = null;
+        }
+        return this.inlineBody;
+    }
+
+    /**
+     * Source for the inline body, analyzed in ns the first time the body
+     * is needed.
+     */
+    void setInlineSource(Namespace ns, String source) {
+        this.inlineNs = ns;
+        this.inlineSource = source;
+    }
+
+    void setInlineBody(List inlineBody) {
+        this.inlineBody = inlineBody;
+    }
+
+    /**
+     * Whether the compiler checked the definition against the declared
+     * stack effect, rather than giving up because part of the body has
+     * an effect it can't know.
+     */
+    boolean isEffectChecked() {
+        return this.effectChecked;
+    }
+
+    void setEffectChecked(boolean effectChecked) {
+        this.effectChecked = effectChecked;
+    }
+
     /**
      * Word definitions created programmatically don't require the usual.
      */
@@ -52,9 +129,9 @@ public class Word extends AFn {
     }
 
     /**
-     * @todo Stack effect is captured so that, at some point, we could actually
-     *   verify the integrity of stack effect declarations programmatically, like
-     *   Factor does. For now, it's a type of documentation.
+     * The stack effect is checked against the definition when the word is
+     * compiled, if the effect of every part of the definition is known;
+     * see {@link Compiler#checkStackEffect}.
      */
     public Word(IPersistentCollection stackEffect, IFn definitionFn) {
         this.stackEffect = stackEffect;
@@ -80,10 +157,12 @@ public class Word extends AFn {
 
     /**
      * Invoke a word definition by invoking the Clojure function that is its impl.
+     * The definition does its own pushing and popping, so its return value
+     * is handed back as-is rather than being evaluated again.
      */
     @Override
     public Object invoke() {
-        return Compiler.eval(this.definitionFn.invoke());
+        return this.definitionFn.invoke();
     }
 
     // public IObj withMeta(IPersistentMap meta){